@@ -0,0 +1,63 @@
+package com.cassandra.benchmarks;
+
+import com.cassandra.CassandraConnector;
+import com.cassandra.domain.Person;
+import com.cassandra.repository.KeyspaceRepository;
+import com.cassandra.repository.PersonRepository;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.utils.UUIDs;
+import org.cassandraunit.utils.EmbeddedCassandraServerHelper;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Base of the benchmarks: starts the embedded server and creates empty person tables.
+ *
+ * The server runs inside the forked benchmark JVM and stops with it.
+ *
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public abstract class EmbeddedCassandraBenchmark {
+
+    static final String KEYSPACE_NAME = "benchmarks";
+
+    protected CassandraConnector client;
+
+    protected Session session;
+
+    protected PersonRepository personRepository;
+
+    /**
+     * Must be called first by the setup method of the benchmark.
+     */
+    protected void startCassandra() throws Exception {
+        EmbeddedCassandraServerHelper.startEmbeddedCassandra(20000L);
+        client = new CassandraConnector();
+        client.connect("127.0.0.1", 9142);
+        session = client.getSession();
+
+        KeyspaceRepository schemaRepository = new KeyspaceRepository(session);
+        schemaRepository.createKeyspace(KEYSPACE_NAME, "SimpleStrategy", 1);
+        schemaRepository.useKeyspace(KEYSPACE_NAME);
+
+        personRepository = new PersonRepository(session);
+        personRepository.deleteTable("person");
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+        personRepository.deleteTable("personByAge");
+        personRepository.createTablePersonsByAge();
+    }
+
+    @TearDown
+    public void stopCassandra() {
+        client.close();
+    }
+
+    static Person newPerson(int i) {
+        return new Person(UUIDs.timeBased(), "Zied" + i, "Kallel", 20 + i % 50, "dev@github.com");
+    }
+}
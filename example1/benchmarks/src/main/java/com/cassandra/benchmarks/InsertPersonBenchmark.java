@@ -0,0 +1,62 @@
+package com.cassandra.benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.cassandra.domain.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Single person writes: CQL built as a string against the prepared insert, and a logged batch against two
+ * asynchronous writes run in parallel.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class InsertPersonBenchmark extends EmbeddedCassandraBenchmark {
+
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        startCassandra();
+    }
+
+    /**
+     * The insert as written before the statements were prepared: the query is built and parsed for every row.
+     */
+    @Benchmark
+    public void insertPersonStringCql() {
+        Person person = newPerson(next++);
+        StringBuilder sb = new StringBuilder("INSERT INTO person(id, firstname, lastname, email, age) VALUES (")
+                .append(person.getId()).append(", '")
+                .append(person.getFirstName()).append("', '")
+                .append(person.getLastName()).append("', '")
+                .append(person.getEmail()).append("', ")
+                .append(person.getAge()).append(");");
+        session.execute(sb.toString());
+    }
+
+    @Benchmark
+    public void insertPersonPrepared() {
+        personRepository.insertPerson(newPerson(next++));
+    }
+
+    @Benchmark
+    public void insertPersonBatch() {
+        personRepository.insertPersonBatch(newPerson(next++));
+    }
+
+    @Benchmark
+    public void insertPersonParallelAsync() {
+        Person person = newPerson(next++);
+        CompletableFuture.allOf(personRepository.insertPersonAsync(person), personRepository.insertPersonByAgeAsync(person)).join();
+    }
+}
@@ -0,0 +1,70 @@
+package com.cassandra.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.cassandra.domain.Person;
+import com.cassandra.repository.PersonRowMapper;
+import com.datastax.driver.core.Row;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Mapping of already fetched rows to persons, without any query.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RowMappingBenchmark extends EmbeddedCassandraBenchmark {
+
+    private static final int ROWS = 1000;
+
+    private List<Row> rows;
+
+    private final PersonRowMapper mapper = new PersonRowMapper();
+
+    private final Person reused = new Person(null, null, null, 0, null);
+
+    @Setup
+    public void setup() throws Exception {
+        startCassandra();
+        List<Person> persons = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            persons.add(newPerson(i));
+        }
+        personRepository.insertPersons(persons);
+        rows = session.execute("SELECT id, firstname, lastname, email, age FROM person;").all();
+    }
+
+    /**
+     * The mapping as written before the row mapper: columns looked up by name.
+     */
+    @Benchmark
+    public void mapByName(Blackhole blackhole) {
+        for (Row r : rows) {
+            blackhole.consume(new Person(r.getUUID("id"), r.getString("firstname"), r.getString("lastname"), r.getInt("age"), r.getString("email")));
+        }
+    }
+
+    @Benchmark
+    public void mapByIndex(Blackhole blackhole) {
+        for (Row r : rows) {
+            blackhole.consume(mapper.map(r));
+        }
+    }
+
+    @Benchmark
+    public void mapIntoReusedPerson(Blackhole blackhole) {
+        for (Row r : rows) {
+            blackhole.consume(mapper.map(r, reused));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.cassandra.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.cassandra.domain.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Full reads of the person table at several table sizes.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SelectAllBenchmark extends EmbeddedCassandraBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    public int tableSize;
+
+    @Setup
+    public void setup() throws Exception {
+        startCassandra();
+        List<Person> persons = new ArrayList<>(tableSize);
+        for (int i = 0; i < tableSize; i++) {
+            persons.add(newPerson(i));
+        }
+        personRepository.insertPersons(persons);
+    }
+
+    @Benchmark
+    public List<Person> selectAll() {
+        return personRepository.selectAll();
+    }
+
+    @Benchmark
+    public List<Person> selectAllAsync() {
+        return personRepository.selectAllAsync().join();
+    }
+}
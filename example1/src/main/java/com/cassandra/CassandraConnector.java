@@ -1,13 +1,34 @@
 package com.cassandra;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.cassandra.repository.PreparedStatementRegistry;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.jvm.GarbageCollectorMetricSet;
+import com.codahale.metrics.jvm.MemoryUsageGaugeSet;
+import com.codahale.metrics.jvm.ThreadStatesGaugeSet;
 import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.Cluster.Builder;
 import com.datastax.driver.core.Host;
+import com.datastax.driver.core.HostDistance;
 import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.QueryOptions;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SocketOptions;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
 
 /**
  * 
@@ -17,35 +38,210 @@ import com.datastax.driver.core.Session;
 public class CassandraConnector {
     private static final Logger LOG = LoggerFactory.getLogger(CassandraConnector.class);
 
+    public static final String DRIVER_METRICS = "cassandra-driver";
+
+    public static final String JVM_METRICS = "jvm";
+
     private Cluster cluster;
 
     private Session session;
 
+    private CassandraConnectorConfig config;
+
+    private JmxReporter jmxReporter;
+
+    private TrackedSpeculativeExecutionPolicy speculativeExecutionPolicy;
+
+    private final Deque<AutoCloseable> closeables = new ArrayDeque<>();
+
+    private final Map<String, Long> startupTimings = new LinkedHashMap<>();
+
     public void connect(final String node, final Integer port) {
+        connect(CassandraConnectorConfig.builder().withContactPoints(node).withPort(port).build());
+    }
+
+    /**
+     * Connects to the cluster.
+     *
+     * The time spent in each phase (cluster discovery, connection pools, statement preparation, metrics) is logged and
+     * kept in {@link #getStartupTimings()}.
+     */
+    public void connect(final CassandraConnectorConfig config) {
 
-        Builder b = Cluster.builder().addContactPoint(node);
+        this.config = config;
+        startupTimings.clear();
+        long phaseStart = System.nanoTime();
+        Builder b = Cluster.builder();
 
-        if (port != null) {
-            b.withPort(port);
+        for (String contactPoint : config.getContactPoints()) {
+            b.addContactPoint(contactPoint);
+        }
+        if (config.getPort() != null) {
+            b.withPort(config.getPort());
         }
-        cluster = b.build();
 
-        Metadata metadata = cluster.getMetadata();
-        LOG.info("Cluster name: " + metadata.getClusterName());
+        DCAwareRoundRobinPolicy.Builder dcAware = DCAwareRoundRobinPolicy.builder();
+        if (config.getLocalDatacenter() != null) {
+            dcAware.withLocalDc(config.getLocalDatacenter());
+        }
+        b.withLoadBalancingPolicy(new TokenAwarePolicy(dcAware.build()));
 
+        PoolingOptions pooling = new PoolingOptions();
+        if (config.getCoreConnectionsPerHost() != null) {
+            int core = config.isPoolWarmup() ? config.getMaxConnectionsPerHost() : config.getCoreConnectionsPerHost();
+            pooling.setConnectionsPerHost(HostDistance.LOCAL, core, config.getMaxConnectionsPerHost());
+        }
+        if (config.getMaxRequestsPerConnection() != null) {
+            pooling.setMaxRequestsPerConnection(HostDistance.LOCAL, config.getMaxRequestsPerConnection());
+        }
+        if (config.getPoolQueueSize() != null) {
+            pooling.setMaxQueueSize(config.getPoolQueueSize());
+        }
+        b.withPoolingOptions(pooling);
+
+        SocketOptions socket = new SocketOptions();
+        if (config.getConnectTimeoutMillis() != null) {
+            socket.setConnectTimeoutMillis(config.getConnectTimeoutMillis());
+        }
+        if (config.getReadTimeoutMillis() != null) {
+            socket.setReadTimeoutMillis(config.getReadTimeoutMillis());
+        }
+        b.withSocketOptions(socket);
+
+        if (config.getCompression() != null) {
+            b.withCompression(config.getCompression());
+        }
+        if (config.getSpeculativeExecutionPercentile() != null) {
+            speculativeExecutionPolicy = new TrackedSpeculativeExecutionPolicy(
+                    socket.getReadTimeoutMillis(), config.getSpeculativeExecutionPercentile(), config.getMaxSpeculativeExecutions());
+            b.withSpeculativeExecutionPolicy(speculativeExecutionPolicy);
+        }
+        if (config.getProtocolVersion() != null) {
+            b.withProtocolVersion(config.getProtocolVersion());
+        }
+        if (!config.isMetadataEnabled()) {
+            b.withQueryOptions(new QueryOptions().setMetadataEnabled(false));
+        }
+        cluster = b.build().init();
+
+        Metadata metadata = cluster.getMetadata();
+        LOG.info("Cluster name: " + metadata.getClusterName() + ", " + metadata.getAllHosts().size() + " hosts");
         for (Host host : metadata.getAllHosts()) {
-            LOG.info("Datacenter: " + host.getDatacenter() + " Host: " + host.getAddress() + " Rack: " + host.getRack());
+            LOG.debug("Datacenter: " + host.getDatacenter() + " Host: " + host.getAddress() + " Rack: " + host.getRack());
         }
+        phaseStart = endPhase("cluster", phaseStart);
 
-        session = cluster.connect();
+        session = config.getKeyspace() == null ? cluster.connect() : cluster.connect(config.getKeyspace());
+        if (config.isPoolWarmup()) {
+            checkPools();
+        }
+        phaseStart = endPhase("pools", phaseStart);
+
+        if (!config.getWarmupQueries().isEmpty()) {
+            int prepared = PreparedStatementRegistry.of(session).prepareAllAsync(config.getWarmupQueries()).join();
+            LOG.info("Prepared " + prepared + " of " + config.getWarmupQueries().size() + " warmup queries");
+            phaseStart = endPhase("statements", phaseStart);
+        }
+
+        if (config.getMetricRegistry() != null) {
+            startMetrics(config.getMetricRegistry());
+            endPhase("metrics", phaseStart);
+        }
+        LOG.info("Connected in " + startupTimings.values().stream().mapToLong(Long::longValue).sum() + " ms " + startupTimings);
     }
 
     public Session getSession() {
         return this.session;
     }
 
+    /**
+     * @return the milliseconds spent in each phase of the last connect, in order.
+     */
+    public Map<String, Long> getStartupTimings() {
+        return Collections.unmodifiableMap(startupTimings);
+    }
+
+    /**
+     * @return the policy firing the speculative executions, or {@code null} if they are disabled.
+     */
+    public TrackedSpeculativeExecutionPolicy getSpeculativeExecutionPolicy() {
+        return speculativeExecutionPolicy;
+    }
+
+    /**
+     * Registers a resource using the session, such as a write-behind writer, to be closed by {@link #close()} before
+     * the session, in the reverse order of registration.
+     */
+    public void registerCloseable(AutoCloseable closeable) {
+        closeables.push(closeable);
+    }
+
     public void close() {
+        while (!closeables.isEmpty()) {
+            AutoCloseable closeable = closeables.pop();
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                LOG.warn("Failed to close " + closeable, e);
+            }
+        }
+        if (config.getMetricRegistry() != null) {
+            stopMetrics(config.getMetricRegistry());
+        }
         session.close();
         cluster.close();
     }
+
+    private long endPhase(String phase, long phaseStart) {
+        long now = System.nanoTime();
+        startupTimings.put(phase, TimeUnit.NANOSECONDS.toMillis(now - phaseStart));
+        return now;
+    }
+
+    /**
+     * Logs the local hosts whose pool did not open all its connections on connect.
+     */
+    private void checkPools() {
+        Session.State state = session.getState();
+        int expected = cluster.getConfiguration().getPoolingOptions().getCoreConnectionsPerHost(HostDistance.LOCAL);
+        for (Host host : state.getConnectedHosts()) {
+            int open = state.getOpenConnections(host);
+            if (open < expected && cluster.getConfiguration().getPolicies().getLoadBalancingPolicy().distance(host) == HostDistance.LOCAL) {
+                LOG.warn("Only " + open + " of " + expected + " connections opened to " + host);
+            }
+        }
+    }
+
+    private void startMetrics(MetricRegistry registry) {
+        registry.register(DRIVER_METRICS, cluster.getMetrics().getRegistry());
+        registry.register(MetricRegistry.name(DRIVER_METRICS, "in-flight-requests"), (Gauge<Integer>) () -> {
+            Session.State state = session.getState();
+            int inFlight = 0;
+            for (Host host : state.getConnectedHosts()) {
+                inFlight += state.getInFlightQueries(host);
+            }
+            return inFlight;
+        });
+        if (speculativeExecutionPolicy != null) {
+            registry.register(MetricRegistry.name(DRIVER_METRICS, "speculative-executions-scheduled"), (Gauge<Long>) speculativeExecutionPolicy::getScheduledExecutions);
+            registry.register(MetricRegistry.name(DRIVER_METRICS, "speculative-executions-won"), (Gauge<Long>) speculativeExecutionPolicy::getWonExecutions);
+        }
+        registry.register(MetricRegistry.name(JVM_METRICS, "memory"), new MemoryUsageGaugeSet());
+        registry.register(MetricRegistry.name(JVM_METRICS, "gc"), new GarbageCollectorMetricSet());
+        registry.register(MetricRegistry.name(JVM_METRICS, "threads"), new ThreadStatesGaugeSet());
+
+        jmxReporter = JmxReporter.forRegistry(registry).inDomain("com.cassandra").build();
+        jmxReporter.start();
+        for (Map.Entry<ScheduledReporter, Long> reporter : config.getReporters().entrySet()) {
+            reporter.getKey().start(reporter.getValue(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void stopMetrics(MetricRegistry registry) {
+        for (ScheduledReporter reporter : config.getReporters().keySet()) {
+            reporter.stop();
+        }
+        jmxReporter.stop();
+        registry.removeMatching((name, metric) -> name.startsWith(DRIVER_METRICS + ".") || name.startsWith(JVM_METRICS + "."));
+    }
 }
@@ -0,0 +1,378 @@
+package com.cassandra;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.datastax.driver.core.ProtocolOptions;
+import com.datastax.driver.core.ProtocolVersion;
+
+/**
+ * Settings used by {@link CassandraConnector} to build its cluster.
+ *
+ * Every setting left unset keeps the driver default. Requests are always routed token-aware over a datacenter-aware
+ * round robin, so they go straight to a replica of the local datacenter.
+ *
+ */
+public class CassandraConnectorConfig {
+
+    private final List<String> contactPoints;
+
+    private final Integer port;
+
+    private final String localDatacenter;
+
+    private final Integer coreConnectionsPerHost;
+
+    private final Integer maxConnectionsPerHost;
+
+    private final Integer maxRequestsPerConnection;
+
+    private final Integer poolQueueSize;
+
+    private final ProtocolOptions.Compression compression;
+
+    private final Integer connectTimeoutMillis;
+
+    private final Integer readTimeoutMillis;
+
+    private final ProtocolVersion protocolVersion;
+
+    private final MetricRegistry metricRegistry;
+
+    private final Map<ScheduledReporter, Long> reporters;
+
+    private final Double speculativeExecutionPercentile;
+
+    private final Integer maxSpeculativeExecutions;
+
+    private final String keyspace;
+
+    private final boolean metadataEnabled;
+
+    private final boolean poolWarmup;
+
+    private final List<String> warmupQueries;
+
+    private CassandraConnectorConfig(Builder builder) {
+        this.contactPoints = Collections.unmodifiableList(new ArrayList<>(builder.contactPoints));
+        this.port = builder.port;
+        this.localDatacenter = builder.localDatacenter;
+        this.coreConnectionsPerHost = builder.coreConnectionsPerHost;
+        this.maxConnectionsPerHost = builder.maxConnectionsPerHost;
+        this.maxRequestsPerConnection = builder.maxRequestsPerConnection;
+        this.poolQueueSize = builder.poolQueueSize;
+        this.compression = builder.compression;
+        this.connectTimeoutMillis = builder.connectTimeoutMillis;
+        this.readTimeoutMillis = builder.readTimeoutMillis;
+        this.protocolVersion = builder.protocolVersion;
+        this.metricRegistry = builder.metricRegistry;
+        this.reporters = Collections.unmodifiableMap(new LinkedHashMap<>(builder.reporters));
+        this.speculativeExecutionPercentile = builder.speculativeExecutionPercentile;
+        this.maxSpeculativeExecutions = builder.maxSpeculativeExecutions;
+        this.keyspace = builder.keyspace;
+        this.metadataEnabled = builder.metadataEnabled;
+        this.poolWarmup = builder.poolWarmup;
+        this.warmupQueries = Collections.unmodifiableList(new ArrayList<>(builder.warmupQueries));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public List<String> getContactPoints() {
+        return contactPoints;
+    }
+
+    public Integer getPort() {
+        return port;
+    }
+
+    public String getLocalDatacenter() {
+        return localDatacenter;
+    }
+
+    public Integer getCoreConnectionsPerHost() {
+        return coreConnectionsPerHost;
+    }
+
+    public Integer getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public Integer getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    public Integer getPoolQueueSize() {
+        return poolQueueSize;
+    }
+
+    public ProtocolOptions.Compression getCompression() {
+        return compression;
+    }
+
+    public Integer getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public Integer getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public ProtocolVersion getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public MetricRegistry getMetricRegistry() {
+        return metricRegistry;
+    }
+
+    /**
+     * @return the reporters to start on connect, with their period in milliseconds.
+     */
+    public Map<ScheduledReporter, Long> getReporters() {
+        return reporters;
+    }
+
+    public Double getSpeculativeExecutionPercentile() {
+        return speculativeExecutionPercentile;
+    }
+
+    public Integer getMaxSpeculativeExecutions() {
+        return maxSpeculativeExecutions;
+    }
+
+    public String getKeyspace() {
+        return keyspace;
+    }
+
+    public boolean isMetadataEnabled() {
+        return metadataEnabled;
+    }
+
+    public boolean isPoolWarmup() {
+        return poolWarmup;
+    }
+
+    public List<String> getWarmupQueries() {
+        return warmupQueries;
+    }
+
+    public static class Builder {
+
+        private final List<String> contactPoints = new ArrayList<>();
+
+        private Integer port;
+
+        private String localDatacenter;
+
+        private Integer coreConnectionsPerHost;
+
+        private Integer maxConnectionsPerHost;
+
+        private Integer maxRequestsPerConnection;
+
+        private Integer poolQueueSize;
+
+        private ProtocolOptions.Compression compression;
+
+        private Integer connectTimeoutMillis;
+
+        private Integer readTimeoutMillis;
+
+        private ProtocolVersion protocolVersion;
+
+        private MetricRegistry metricRegistry;
+
+        private final Map<ScheduledReporter, Long> reporters = new LinkedHashMap<>();
+
+        private Double speculativeExecutionPercentile;
+
+        private Integer maxSpeculativeExecutions;
+
+        private String keyspace;
+
+        private boolean metadataEnabled = true;
+
+        private boolean poolWarmup;
+
+        private final List<String> warmupQueries = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds nodes used to discover the cluster. More than one should be given so that the connector can start
+         * while a node is down.
+         */
+        public Builder withContactPoints(String... nodes) {
+            contactPoints.addAll(Arrays.asList(nodes));
+            return this;
+        }
+
+        public Builder withPort(Integer port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Sets the datacenter whose hosts are queried; hosts of other datacenters are never used.
+         * When unset, the datacenter of the first contact point is used.
+         */
+        public Builder withLocalDatacenter(String localDatacenter) {
+            this.localDatacenter = localDatacenter;
+            return this;
+        }
+
+        /**
+         * Sets the number of connections opened to each local host when connecting, and the number it may grow to.
+         */
+        public Builder withConnectionsPerHost(int core, int max) {
+            this.coreConnectionsPerHost = core;
+            this.maxConnectionsPerHost = max;
+            return this;
+        }
+
+        /**
+         * Sets the number of requests sent concurrently on one connection to a local host.
+         */
+        public Builder withMaxRequestsPerConnection(int maxRequestsPerConnection) {
+            this.maxRequestsPerConnection = maxRequestsPerConnection;
+            return this;
+        }
+
+        /**
+         * Sets the number of requests waiting for a connection once every connection to a host is busy; requests
+         * past that are rejected. Raise it when a large number of threads call the repository at the same time.
+         */
+        public Builder withPoolQueueSize(int poolQueueSize) {
+            this.poolQueueSize = poolQueueSize;
+            return this;
+        }
+
+        /**
+         * Compresses the traffic with LZ4 or Snappy, trading some CPU for less network.
+         */
+        public Builder withCompression(ProtocolOptions.Compression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        public Builder withConnectTimeoutMillis(int connectTimeoutMillis) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * Sets how long the driver waits for a response before trying the next host.
+         */
+        public Builder withReadTimeoutMillis(int readTimeoutMillis) {
+            this.readTimeoutMillis = readTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * Forces the native protocol version instead of negotiating it with the first node.
+         */
+        public Builder withProtocolVersion(ProtocolVersion protocolVersion) {
+            this.protocolVersion = protocolVersion;
+            return this;
+        }
+
+        /**
+         * Adds the driver metrics (connections, in-flight requests, retries, speculative executions...) and the JVM
+         * metrics to the registry, and exports the whole registry through JMX while connected.
+         */
+        public Builder withMetricRegistry(MetricRegistry metricRegistry) {
+            this.metricRegistry = metricRegistry;
+            return this;
+        }
+
+        /**
+         * Starts the reporter on connect and stops it on close. The reporter must report the registry given to
+         * {@link #withMetricRegistry(MetricRegistry)}.
+         */
+        public Builder withReporter(ScheduledReporter reporter, long period, TimeUnit unit) {
+            reporters.put(reporter, unit.toMillis(period));
+            return this;
+        }
+
+        /**
+         * Sends an idempotent request to another host once it has waited longer than the given percentile of the
+         * recent latencies of the host queried, see {@link TrackedSpeculativeExecutionPolicy}. A high percentile
+         * (e.g. 99) only duplicates the slowest requests.
+         *
+         * @param percentile the latency percentile, between 0 and 100.
+         * @param maxSpeculativeExecutions the maximum number of executions added to the first one.
+         */
+        public Builder withSpeculativeExecution(double percentile, int maxSpeculativeExecutions) {
+            this.speculativeExecutionPercentile = percentile;
+            this.maxSpeculativeExecutions = maxSpeculativeExecutions;
+            return this;
+        }
+
+        /**
+         * Logs the session into the keyspace on connect, saving the USE round trip.
+         */
+        public Builder withKeyspace(String keyspace) {
+            this.keyspace = keyspace;
+            return this;
+        }
+
+        /**
+         * Enables or disables the schema and token metadata, enabled by default.
+         *
+         * Disabled, the driver neither loads the definition of every keyspace and table on connect nor refreshes it on
+         * each schema change, which shortens the startup of large clusters. Without token metadata requests are no
+         * longer routed to a replica and the token ranges of the ring are unknown, so
+         * {@link com.cassandra.repository.PersonTokenRangeScanner} cannot be used. The driver can only turn the
+         * metadata off as a whole, not limit it to some keyspaces.
+         */
+        public Builder withMetadataEnabled(boolean metadataEnabled) {
+            this.metadataEnabled = metadataEnabled;
+            return this;
+        }
+
+        /**
+         * Opens the maximum number of connections to each local host on connect, instead of the core number growing
+         * under the first load. Requires {@link #withConnectionsPerHost(int, int)}.
+         */
+        public Builder withPoolWarmup(boolean poolWarmup) {
+            this.poolWarmup = poolWarmup;
+            return this;
+        }
+
+        /**
+         * Prepares the queries in parallel on connect, in the {@link com.cassandra.repository.PreparedStatementRegistry}
+         * of the session, so that the first requests do not wait for it. Queries referring to tables of a keyspace
+         * should be given with {@link #withKeyspace(String)}; those failing to prepare are prepared again on first use.
+         *
+         * @see com.cassandra.repository.PersonRepository#getQueries(int)
+         */
+        public Builder withWarmupQueries(Collection<String> queries) {
+            warmupQueries.addAll(queries);
+            return this;
+        }
+
+        public CassandraConnectorConfig build() {
+            if (contactPoints.isEmpty()) {
+                throw new IllegalStateException("At least one contact point is required");
+            }
+            if (!reporters.isEmpty() && metricRegistry == null) {
+                throw new IllegalStateException("Reporters require a metric registry");
+            }
+            if (poolWarmup && maxConnectionsPerHost == null) {
+                throw new IllegalStateException("Pool warmup requires the connections per host");
+            }
+            return new CassandraConnectorConfig(this);
+        }
+    }
+}
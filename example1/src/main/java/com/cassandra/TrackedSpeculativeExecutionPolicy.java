@@ -0,0 +1,125 @@
+package com.cassandra;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.LatencyTracker;
+import com.datastax.driver.core.PerHostPercentileTracker;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.PercentileSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.SpeculativeExecutionPolicy;
+
+/**
+ * Speculative execution policy starting a new execution of an idempotent statement on the next host once the current
+ * execution has run longer than a percentile of the recent latencies of its host.
+ *
+ * Counts how many executions were fired and how many of them answered first. Nothing is fired until a host has
+ * recorded enough latencies for the percentile to be meaningful, and never for statements not marked idempotent.
+ *
+ */
+public class TrackedSpeculativeExecutionPolicy implements SpeculativeExecutionPolicy, LatencyTracker {
+
+    private final PerHostPercentileTracker latencies;
+
+    private final SpeculativeExecutionPolicy delegate;
+
+    private final AtomicLong scheduledExecutions = new AtomicLong();
+
+    private final AtomicLong wonExecutions = new AtomicLong();
+
+    /**
+     * Host of the first execution of each statement for which a speculative execution was scheduled.
+     */
+    private final Map<Statement, Host> firstHosts = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private Cluster cluster;
+
+    /**
+     * @param highestTrackableLatencyMillis the highest latency recorded, longer ones are ignored.
+     * @param percentile the percentile of the latencies of a host after which a new execution is fired.
+     * @param maxSpeculativeExecutions the maximum number of executions started in addition to the first one.
+     */
+    public TrackedSpeculativeExecutionPolicy(long highestTrackableLatencyMillis, double percentile, int maxSpeculativeExecutions) {
+        this.latencies = PerHostPercentileTracker.builder(highestTrackableLatencyMillis).build();
+        this.delegate = new PercentileSpeculativeExecutionPolicy(latencies, percentile, maxSpeculativeExecutions);
+    }
+
+    @Override
+    public void init(Cluster cluster) {
+        this.cluster = cluster;
+        delegate.init(cluster);
+        cluster.register(latencies);
+        cluster.register(this);
+    }
+
+    @Override
+    public SpeculativeExecutionPlan newPlan(String loggedKeyspace, Statement statement) {
+        SpeculativeExecutionPlan plan = delegate.newPlan(loggedKeyspace, statement);
+        return new SpeculativeExecutionPlan() {
+            private boolean first = true;
+
+            @Override
+            public long nextExecution(Host lastQueried) {
+                long delay = plan.nextExecution(lastQueried);
+                if (delay >= 0) {
+                    scheduledExecutions.incrementAndGet();
+                    if (first) {
+                        firstHosts.put(statement, lastQueried);
+                    }
+                }
+                first = false;
+                return delay;
+            }
+        };
+    }
+
+    @Override
+    public void update(Host host, Statement statement, Exception exception, long newLatencyNanos) {
+        if (exception != null) {
+            return;
+        }
+        Host firstHost = firstHosts.remove(statement);
+        if (firstHost != null && !firstHost.equals(host)) {
+            wonExecutions.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onRegister(Cluster cluster) {
+    }
+
+    @Override
+    public void onUnregister(Cluster cluster) {
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    /**
+     * @return the number of speculative executions scheduled, fired or not.
+     */
+    public long getScheduledExecutions() {
+        return scheduledExecutions.get();
+    }
+
+    /**
+     * @return the number of speculative executions started, as counted by the driver.
+     */
+    public long getFiredExecutions() {
+        return cluster == null ? 0 : cluster.getMetrics().getErrorMetrics().getSpeculativeExecutions().getCount();
+    }
+
+    /**
+     * @return the number of requests with a speculative execution scheduled that were answered by another host than
+     *         the one of their first execution. Such a request retried on another host is counted as well.
+     */
+    public long getWonExecutions() {
+        return wonExecutions.get();
+    }
+}
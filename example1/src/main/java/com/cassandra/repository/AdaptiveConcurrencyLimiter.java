@@ -0,0 +1,327 @@
+package com.cassandra.repository;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.exceptions.BusyPoolException;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.ReadTimeoutException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+
+/**
+ * Limits the number of requests in flight to what the cluster currently sustains, with additive increase and
+ * multiplicative decrease (AIMD).
+ *
+ * Each completed request is a sample. A request that failed with an overload or a timeout, or took longer than the
+ * latency threshold, cuts the limit by the backoff ratio, once per round trip: requests sent before the last cut do
+ * not cut it again. A successful request grows the limit by {@code 1 / limit} while at least half of it is in use,
+ * that is by one per round trip. The limit stays between its minimum and maximum.
+ *
+ * Requests above the limit wait in a bounded queue, each for at most the maximum wait; a request finding the queue
+ * full, or still waiting at its deadline, is rejected with a {@link RejectedExecutionException} without being sent.
+ * Waiting blocks the calling thread, so requests must not be started from a driver callback thread.
+ *
+ * One limiter is meant to be shared by the repositories of a cluster, see
+ * {@link PersonRepositoryConfig.Builder#withConcurrencyLimiter(AdaptiveConcurrencyLimiter)}.
+ *
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    public static final int DEFAULT_INITIAL_LIMIT = 32;
+
+    public static final int DEFAULT_MIN_LIMIT = 4;
+
+    public static final int DEFAULT_MAX_LIMIT = StatementExecutor.DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+
+    public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+    public static final long DEFAULT_LATENCY_THRESHOLD_MILLIS = 500;
+
+    public static final int DEFAULT_MAX_QUEUED_REQUESTS = 1024;
+
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 1000;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double backoffRatio;
+
+    private final long latencyThresholdNanos;
+
+    private final int maxQueuedRequests;
+
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition slotAvailable = lock.newCondition();
+
+    private double limit;
+
+    private int inFlight;
+
+    private int queued;
+
+    private long lastDecrease = System.nanoTime();
+
+    private long decreases;
+
+    private long rejected;
+
+    private AdaptiveConcurrencyLimiter(Builder builder) {
+        this.limit = builder.initialLimit;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.backoffRatio = builder.backoffRatio;
+        this.latencyThresholdNanos = builder.latencyThresholdNanos;
+        this.maxQueuedRequests = builder.maxQueuedRequests;
+        this.maxWaitNanos = builder.maxWaitNanos;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Takes a slot, waiting for one in the queue if the limit is reached.
+     *
+     * @return the time the slot was taken, to be given back to {@link #release(long, Throwable)}.
+     * @throws RejectedExecutionException if the queue is full or no slot was freed before the maximum wait.
+     */
+    public long acquire() {
+        lock.lock();
+        try {
+            if (inFlight < currentLimit()) {
+                inFlight++;
+                return System.nanoTime();
+            }
+            if (queued >= maxQueuedRequests) {
+                rejected++;
+                throw new RejectedExecutionException("Too many requests waiting for the concurrency limit of " + currentLimit());
+            }
+            queued++;
+            try {
+                long remaining = maxWaitNanos;
+                while (inFlight >= currentLimit()) {
+                    if (remaining <= 0) {
+                        rejected++;
+                        throw new RejectedExecutionException("No request slot freed within " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms, the concurrency limit is " + currentLimit());
+                    }
+                    remaining = slotAvailable.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejected++;
+                throw new RejectedExecutionException("Interrupted while waiting for a request slot", e);
+            } finally {
+                queued--;
+            }
+            inFlight++;
+            return System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives a slot back and adjusts the limit with the outcome of its request.
+     *
+     * @param start the time returned by {@link #acquire()}.
+     * @param error the error of the request, {@code null} if it succeeded.
+     */
+    public void release(long start, Throwable error) {
+        long now = System.nanoTime();
+        boolean dropped = isOverload(error) || now - start > latencyThresholdNanos;
+        lock.lock();
+        try {
+            int before = currentLimit();
+            if (dropped) {
+                if (start - lastDecrease > 0) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecrease = now;
+                    decreases++;
+                }
+            } else if (error == null && inFlight >= limit / 2) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            inFlight--;
+            slotAvailable.signal();
+            for (int added = currentLimit() - before; added > 0; added--) {
+                slotAvailable.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of requests allowed in flight.
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return currentLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of times the limit was cut.
+     */
+    public long getDecreases() {
+        lock.lock();
+        try {
+            return decreases;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of requests rejected without being sent.
+     */
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Exports the limit, the in-flight and queued requests, the cuts and the rejections as gauges.
+     *
+     * @param registry the registry to add the gauges to.
+     * @param prefix the prefix of the gauge names.
+     */
+    public void registerMetrics(MetricRegistry registry, String prefix) {
+        registry.register(MetricRegistry.name(prefix, "limit"), (Gauge<Integer>) this::getLimit);
+        registry.register(MetricRegistry.name(prefix, "inFlight"), (Gauge<Integer>) this::getInFlight);
+        registry.register(MetricRegistry.name(prefix, "queued"), (Gauge<Integer>) this::getQueued);
+        registry.register(MetricRegistry.name(prefix, "decreases"), (Gauge<Long>) this::getDecreases);
+        registry.register(MetricRegistry.name(prefix, "rejected"), (Gauge<Long>) this::getRejected);
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return whether the error tells that the cluster, or the connections to it, cannot keep up.
+     */
+    static boolean isOverload(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof NoHostAvailableException) {
+            for (Throwable hostError : ((NoHostAvailableException) cause).getErrors().values()) {
+                if (isOverload(hostError)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return cause instanceof OverloadedException
+                || cause instanceof WriteTimeoutException
+                || cause instanceof ReadTimeoutException
+                || cause instanceof OperationTimedOutException
+                || cause instanceof BusyPoolException;
+    }
+
+    public static class Builder {
+
+        private int initialLimit = DEFAULT_INITIAL_LIMIT;
+
+        private int minLimit = DEFAULT_MIN_LIMIT;
+
+        private int maxLimit = DEFAULT_MAX_LIMIT;
+
+        private double backoffRatio = DEFAULT_BACKOFF_RATIO;
+
+        private long latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_LATENCY_THRESHOLD_MILLIS);
+
+        private int maxQueuedRequests = DEFAULT_MAX_QUEUED_REQUESTS;
+
+        private long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_WAIT_MILLIS);
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the limit to start from and the bounds it is kept within.
+         */
+        public Builder withLimits(int initialLimit, int minLimit, int maxLimit) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Sets the factor applied to the limit when the cluster is overloaded, between 0 and 1 excluded.
+         */
+        public Builder withBackoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * Sets the latency above which a successful request still counts as an overload.
+         */
+        public Builder withLatencyThreshold(long latencyThreshold, TimeUnit unit) {
+            this.latencyThresholdNanos = unit.toNanos(latencyThreshold);
+            return this;
+        }
+
+        /**
+         * Sets the number of requests that may wait for a slot, and how long each of them waits at most.
+         */
+        public Builder withQueue(int maxQueuedRequests, long maxWait, TimeUnit unit) {
+            this.maxQueuedRequests = maxQueuedRequests;
+            this.maxWaitNanos = unit.toNanos(maxWait);
+            return this;
+        }
+
+        public AdaptiveConcurrencyLimiter build() {
+            if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+                throw new IllegalStateException("The limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+            }
+            if (backoffRatio <= 0 || backoffRatio >= 1) {
+                throw new IllegalStateException("backoffRatio must be between 0 and 1 excluded");
+            }
+            if (latencyThresholdNanos <= 0) {
+                throw new IllegalStateException("latencyThreshold must be positive");
+            }
+            if (maxQueuedRequests < 0 || maxWaitNanos < 0) {
+                throw new IllegalStateException("maxQueuedRequests and maxWait must not be negative");
+            }
+            return new AdaptiveConcurrencyLimiter(this);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.cassandra.repository;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs blocking repository calls concurrently, each on its own thread, with a bound on the calls running at once.
+ *
+ * On Java 21 and later the calls run on virtual threads, so tens of thousands of blocking calls can wait on the
+ * cluster at the same time without a platform thread each; on older versions a cached pool of platform threads is
+ * used instead. Once the maximum number of calls is running, {@link #submit(Supplier)} blocks until one completes.
+ *
+ * The driver must be allowed that many concurrent requests: connections per host times requests per connection,
+ * plus the pool queue size (see {@link com.cassandra.CassandraConnectorConfig.Builder#withPoolQueueSize(int)}).
+ *
+ */
+public class BlockingCallExecutor implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(BlockingCallExecutor.class);
+
+    public static final int DEFAULT_MAX_CONCURRENT_CALLS = 1024;
+
+    private final ExecutorService threads;
+
+    private final boolean virtualThreads;
+
+    private final int maxConcurrentCalls;
+
+    private final Semaphore runningCalls;
+
+    public BlockingCallExecutor() {
+        this(DEFAULT_MAX_CONCURRENT_CALLS);
+    }
+
+    /**
+     * @param maxConcurrentCalls the maximum number of calls running at the same time.
+     */
+    public BlockingCallExecutor(int maxConcurrentCalls) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be at least 1, got " + maxConcurrentCalls);
+        }
+        ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+        this.virtualThreads = virtual != null;
+        this.threads = virtual != null ? virtual : Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "repository-call");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.runningCalls = new Semaphore(maxConcurrentCalls);
+    }
+
+    /**
+     * Runs the call on its own thread, waiting first for a free slot.
+     *
+     * @param call a blocking call, e.g. {@code () -> repository.selectById(id)}.
+     * @return a future completed with the result of the call.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        runningCalls.acquireUninterruptibly();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return call.get();
+                } finally {
+                    runningCalls.release();
+                }
+            }, threads);
+        } catch (RuntimeException e) {
+            runningCalls.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return {@code true} if the calls run on virtual threads.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public int getRunningCalls() {
+        return maxConcurrentCalls - runningCalls.availablePermits();
+    }
+
+    /**
+     * Stops accepting calls and waits for the running ones to complete.
+     */
+    @Override
+    public void close() {
+        threads.shutdown();
+        try {
+            threads.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Looked up reflectively so that the project still builds for Java 8.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            LOG.warn("Virtual threads are not available, using platform threads", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.cassandra.repository;
+
+import java.util.List;
+
+import com.cassandra.domain.Person;
+
+/**
+ * Outcome of a bulk load: how many rows were written, how many failed and how fast it went.
+ *
+ */
+public class BulkLoadResult {
+
+    private final long rowsWritten;
+
+    private final long rowsFailed;
+
+    private final long elapsedNanos;
+
+    private final List<Person> failedPersons;
+
+    BulkLoadResult(long rowsWritten, long rowsFailed, long elapsedNanos, List<Person> failedPersons) {
+        this.rowsWritten = rowsWritten;
+        this.rowsFailed = rowsFailed;
+        this.elapsedNanos = elapsedNanos;
+        this.failedPersons = failedPersons;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public long getRowsFailed() {
+        return rowsFailed;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the persons for which at least one row could not be written, so they can be loaded again.
+     */
+    public List<Person> getFailedPersons() {
+        return failedPersons;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rowsWritten * 1_000_000_000d / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkLoadResult{" +
+                "rowsWritten=" + rowsWritten +
+                ", rowsFailed=" + rowsFailed +
+                ", elapsedMillis=" + elapsedNanos / 1_000_000 +
+                ", rowsPerSecond=" + (long) getRowsPerSecond() +
+                '}';
+    }
+}
@@ -0,0 +1,147 @@
+package com.cassandra.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.cassandra.domain.Person;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Read-through cache in front of the person lookups of a {@link PersonStorage}.
+ *
+ * Entries are evicted by size and by age. Concurrent misses on the same key share a single query. Writes made
+ * through this class refresh the person by id and invalidate the age lookups they affect; writes made directly on
+ * the storage are only seen once the entries expire.
+ *
+ * Persons are mutable, so the cache keeps its own copies: it copies the persons written through it, and returns a copy
+ * of the cached persons, in a new list, on every read.
+ *
+ */
+public class CachingPersonRepository {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    public static final long DEFAULT_EXPIRE_AFTER_WRITE_SECONDS = 60;
+
+    private final PersonStorage repository;
+
+    private final AsyncLoadingCache<UUID, Person> personsById;
+
+    private final AsyncLoadingCache<Integer, List<Person>> personsByAge;
+
+    public CachingPersonRepository(PersonStorage repository) {
+        this(repository, DEFAULT_MAXIMUM_SIZE, DEFAULT_EXPIRE_AFTER_WRITE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param repository the storage queried on a miss.
+     * @param maximumSize the maximum number of entries of each cache.
+     * @param expireAfterWrite how long an entry is served before being read again.
+     * @param unit the unit of expireAfterWrite.
+     */
+    public CachingPersonRepository(PersonStorage repository, long maximumSize, long expireAfterWrite, TimeUnit unit) {
+        this.repository = repository;
+        this.personsById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite, unit)
+                .recordStats()
+                .buildAsync((id, executor) -> repository.selectByIdAsync(id));
+        this.personsByAge = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite, unit)
+                .recordStats()
+                .buildAsync((age, executor) -> repository.selectByAgeAsync(age));
+    }
+
+    /**
+     * Select a person by id, from the cache if present.
+     *
+     * @return the person, or {@code null} if there is none with that id.
+     */
+    public Person selectById(UUID id) {
+        return copy(personsById.get(id).join());
+    }
+
+    public CompletableFuture<Person> selectByIdAsync(UUID id) {
+        return personsById.get(id).thenApply(CachingPersonRepository::copy);
+    }
+
+    /**
+     * Select the persons of an age, from the cache if present.
+     */
+    public List<Person> selectByAge(int age) {
+        return copy(personsByAge.get(age).join());
+    }
+
+    public CompletableFuture<List<Person>> selectByAgeAsync(int age) {
+        return personsByAge.get(age).thenApply(CachingPersonRepository::copy);
+    }
+
+    public void insertPerson(Person person) {
+        repository.insertPerson(person);
+        personsById.put(person.getId(), CompletableFuture.completedFuture(copy(person)));
+    }
+
+    public void insertPersonByAge(Person person) {
+        repository.insertPersonByAge(person);
+        personsByAge.synchronous().invalidate(person.getAge());
+    }
+
+    public void insertPersonBatch(Person person) {
+        repository.insertPersonBatch(person);
+        personsById.put(person.getId(), CompletableFuture.completedFuture(copy(person)));
+        personsByAge.synchronous().invalidate(person.getAge());
+    }
+
+    public void deletePersonByAge(int age) {
+        repository.deletePersonByAge(age);
+        personsByAge.synchronous().invalidate(age);
+    }
+
+    public CacheStats getPersonsByIdStats() {
+        return personsById.synchronous().stats();
+    }
+
+    public CacheStats getPersonsByAgeStats() {
+        return personsByAge.synchronous().stats();
+    }
+
+    /**
+     * Exports the hit, miss, load failure and eviction counts of both caches as gauges.
+     *
+     * @param registry the registry to add the gauges to.
+     * @param prefix the prefix of the gauge names.
+     */
+    public void registerMetrics(MetricRegistry registry, String prefix) {
+        registerMetrics(registry, MetricRegistry.name(prefix, "personsById"), personsById);
+        registerMetrics(registry, MetricRegistry.name(prefix, "personsByAge"), personsByAge);
+    }
+
+    private static Person copy(Person person) {
+        return person == null ? null : new Person(person.getId(), person.getFirstName(), person.getLastName(), person.getAge(), person.getEmail());
+    }
+
+    private static List<Person> copy(List<Person> persons) {
+        List<Person> copies = new ArrayList<>(persons.size());
+        for (Person person : persons) {
+            copies.add(copy(person));
+        }
+        return copies;
+    }
+
+    private static void registerMetrics(MetricRegistry registry, String name, AsyncLoadingCache<?, ?> cache) {
+        registry.register(MetricRegistry.name(name, "hits"), (Gauge<Long>) () -> cache.synchronous().stats().hitCount());
+        registry.register(MetricRegistry.name(name, "misses"), (Gauge<Long>) () -> cache.synchronous().stats().missCount());
+        registry.register(MetricRegistry.name(name, "hitRate"), (Gauge<Double>) () -> cache.synchronous().stats().hitRate());
+        registry.register(MetricRegistry.name(name, "loadFailures"), (Gauge<Long>) () -> cache.synchronous().stats().loadFailureCount());
+        registry.register(MetricRegistry.name(name, "evictions"), (Gauge<Long>) () -> cache.synchronous().stats().evictionCount());
+        registry.register(MetricRegistry.name(name, "size"), (Gauge<Long>) () -> cache.synchronous().estimatedSize());
+    }
+}
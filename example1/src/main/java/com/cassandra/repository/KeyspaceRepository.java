@@ -1,6 +1,8 @@
 package com.cassandra.repository;
 
+import com.codahale.metrics.MetricRegistry;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
 
 /**
  * Repository to handle the Cassandra schema.
@@ -9,8 +11,34 @@ import com.datastax.driver.core.Session;
 public class KeyspaceRepository {
     private Session session;
 
+    private RepositoryMetrics metrics;
+
+    private QueryTracer tracer;
+
     public KeyspaceRepository(Session session) {
+        this(session, null, QueryTracer.disabled());
+    }
+
+    /**
+     * @param session the session to run the statements on.
+     * @param metricRegistry the registry recording the latency and the errors of every operation.
+     */
+    public KeyspaceRepository(Session session, MetricRegistry metricRegistry) {
+        this(session, metricRegistry, QueryTracer.disabled());
+    }
+
+    /**
+     * @param session the session to run the statements on.
+     * @param metricRegistry the registry recording the latency and the errors of every operation, {@code null} for
+     *        none.
+     * @param tracer traces a sample of the statements and reports the slow ones.
+     */
+    public KeyspaceRepository(Session session, MetricRegistry metricRegistry, QueryTracer tracer) {
         this.session = session;
+        this.metrics = metricRegistry == null
+                ? RepositoryMetrics.disabled()
+                : new RepositoryMetrics(metricRegistry, MetricRegistry.name(KeyspaceRepository.class));
+        this.tracer = tracer;
     }
 
     /**
@@ -26,11 +54,11 @@ public class KeyspaceRepository {
 
         final String query = sb.toString();
 
-        session.execute(query);
+        metrics.time("createKeyspace", () -> execute(query));
     }
 
     public void useKeyspace(String keyspace) {
-        session.execute("USE " + keyspace);
+        metrics.time("useKeyspace", () -> execute("USE " + keyspace));
     }
 
     /**
@@ -44,6 +72,10 @@ public class KeyspaceRepository {
 
         final String query = sb.toString();
 
-        session.execute(query);
+        metrics.time("deleteKeyspace", () -> execute(query));
+    }
+
+    private void execute(String query) {
+        tracer.execute(session, new SimpleStatement(query));
     }
 }
@@ -0,0 +1,68 @@
+package com.cassandra.repository;
+
+import java.util.List;
+import java.util.UUID;
+
+import com.cassandra.domain.Person;
+
+/**
+ * Outcome of a multi-get: the persons found, in the order of the requested ids, the ids without a person and those
+ * whose read failed or did not complete in time.
+ *
+ */
+public class MultiGetResult {
+
+    private final List<Person> persons;
+
+    private final List<UUID> missingIds;
+
+    private final List<UUID> unresolvedIds;
+
+    private final long elapsedNanos;
+
+    MultiGetResult(List<Person> persons, List<UUID> missingIds, List<UUID> unresolvedIds, long elapsedNanos) {
+        this.persons = persons;
+        this.missingIds = missingIds;
+        this.unresolvedIds = unresolvedIds;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the persons found, in the order of their ids in the request.
+     */
+    public List<Person> getPersons() {
+        return persons;
+    }
+
+    /**
+     * @return the ids read without finding a person.
+     */
+    public List<UUID> getMissingIds() {
+        return missingIds;
+    }
+
+    /**
+     * @return the ids whose read failed or was still running at the timeout; they may or may not have a person.
+     */
+    public List<UUID> getUnresolvedIds() {
+        return unresolvedIds;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public boolean isComplete() {
+        return unresolvedIds.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "MultiGetResult{" +
+                "persons=" + persons.size() +
+                ", missingIds=" + missingIds.size() +
+                ", unresolvedIds=" + unresolvedIds.size() +
+                ", elapsedMillis=" + elapsedNanos / 1_000_000 +
+                '}';
+    }
+}
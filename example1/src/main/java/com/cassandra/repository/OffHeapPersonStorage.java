@@ -0,0 +1,443 @@
+package com.cassandra.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import org.apache.cassandra.utils.MurmurHash;
+
+import com.cassandra.domain.Person;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+
+/**
+ * In-memory {@link PersonStorage} keeping the values of the person rows outside the heap.
+ *
+ * Each table is a skip list ordered like the table in Cassandra: partitions by their Murmur3 token, the rows of a
+ * personByAge partition by id, in the order of the CQL uuid type. The persons map their id to the address of their
+ * serialized row in an {@link OffHeapSlab}; the personByAge rows are made of their primary key only, so the skip list
+ * holds them entirely. A table is dropped as a whole by {@link #deleteTable(String)}, which also frees its memory. A
+ * replaced row stays in the slab until the dead rows take more than half of it and at least a chunk; the live rows
+ * are then copied into a new slab, blocking the other accesses to the person table while it runs.
+ *
+ * Safe for concurrent use. Writes are visible to reads as soon as they return; unlike a logged batch,
+ * {@link #insertPersonBatch(Person)} may be seen half applied by a concurrent read.
+ *
+ */
+public class OffHeapPersonStorage implements PersonStorage {
+
+    /**
+     * The order of the CQL uuid type: by version, then by timestamp for time-based ids or by the most significant
+     * bits for the others, then by the least significant bits.
+     */
+    static final Comparator<UUID> ID_ORDER = (a, b) -> {
+        int c = Integer.compare(a.version(), b.version());
+        if (c != 0) {
+            return c;
+        }
+        c = a.version() == 1 ? Long.compare(a.timestamp(), b.timestamp()) : Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        if (c != 0) {
+            return c;
+        }
+        return Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    };
+
+    /**
+     * The share of the bytes written to the slab of the person rows that its dead rows may take before it is
+     * compacted.
+     */
+    static final double MAX_DEAD_RATIO = 0.5;
+
+    private final int ageBuckets;
+
+    private final int chunkSize;
+
+    private volatile PersonTable persons;
+
+    private volatile ConcurrentSkipListMap<PartitionKey, NavigableSet<UUID>> personsByAge;
+
+    public OffHeapPersonStorage() {
+        this(PersonRepositoryConfig.DEFAULT_AGE_BUCKETS);
+    }
+
+    /**
+     * @param ageBuckets the number of partitions per age of the personByAge table, as in
+     *        {@link PersonRepositoryConfig.Builder#withAgeBuckets(int)}.
+     */
+    public OffHeapPersonStorage(int ageBuckets) {
+        this(ageBuckets, OffHeapSlab.DEFAULT_CHUNK_SIZE);
+    }
+
+    OffHeapPersonStorage(int ageBuckets, int chunkSize) {
+        if (ageBuckets < 1) {
+            throw new IllegalArgumentException("ageBuckets must be at least 1, got " + ageBuckets);
+        }
+        this.ageBuckets = ageBuckets;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public synchronized void createTable() {
+        if (persons == null) {
+            persons = new PersonTable(chunkSize);
+        }
+    }
+
+    @Override
+    public synchronized void createTablePersonsByAge() {
+        if (personsByAge == null) {
+            personsByAge = new ConcurrentSkipListMap<>();
+        }
+    }
+
+    @Override
+    public synchronized void deleteTable(String tableName) {
+        if (PersonRepository.TABLE_NAME.equalsIgnoreCase(tableName)) {
+            persons = null;
+        } else if (PersonRepository.TABLE_NAME_BY_AGE.equalsIgnoreCase(tableName)) {
+            personsByAge = null;
+        }
+    }
+
+    @Override
+    public void insertPerson(Person person) {
+        PersonTable table = persons();
+        byte[] row = encode(person);
+        Long replaced;
+        table.lock.readLock().lock();
+        try {
+            replaced = table.rows.put(PartitionKey.of(person.getId()), table.slab.write(row));
+            if (replaced != null) {
+                table.slab.free(replaced);
+            }
+        } finally {
+            table.lock.readLock().unlock();
+        }
+        if (replaced != null && table.needsCompaction()) {
+            compact(table);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> insertPersonAsync(Person person) {
+        return completed(() -> {
+            insertPerson(person);
+            return null;
+        });
+    }
+
+    @Override
+    public void insertPersonByAge(Person person) {
+        UUID id = person.getId();
+        personsByAge().compute(partitionKey(person.getAge(), PersonRepository.ageBucket(id, ageBuckets)), (key, ids) -> {
+            NavigableSet<UUID> partition = ids == null ? new ConcurrentSkipListSet<>(ID_ORDER) : ids;
+            partition.add(id);
+            return partition;
+        });
+    }
+
+    @Override
+    public void insertPersonBatch(Person person) {
+        persons();
+        personsByAge();
+        insertPerson(person);
+        insertPersonByAge(person);
+    }
+
+    @Override
+    public Person selectById(UUID id) {
+        PersonTable table = persons();
+        byte[] row;
+        table.lock.readLock().lock();
+        try {
+            Long address = table.rows.get(PartitionKey.of(id));
+            row = address == null ? null : table.slab.read(address);
+        } finally {
+            table.lock.readLock().unlock();
+        }
+        return row == null ? null : decode(id, row);
+    }
+
+    @Override
+    public CompletableFuture<Person> selectByIdAsync(UUID id) {
+        return completed(() -> selectById(id));
+    }
+
+    @Override
+    public List<Person> selectByAge(int age) {
+        return selectByAgeRange(age, age);
+    }
+
+    @Override
+    public CompletableFuture<List<Person>> selectByAgeAsync(int age) {
+        return completed(() -> selectByAge(age));
+    }
+
+    @Override
+    public List<Person> selectByAgeRange(int min, int max) {
+        if (min > max) {
+            throw new IllegalArgumentException("min must not be greater than max");
+        }
+        if ((long) max - min >= PersonRepository.MAX_AGE_RANGE) {
+            throw new IllegalArgumentException("The age range must not span more than " + PersonRepository.MAX_AGE_RANGE + " ages");
+        }
+        ConcurrentSkipListMap<PartitionKey, NavigableSet<UUID>> partitions = personsByAge();
+        List<Person> result = new ArrayList<>();
+        for (long age = min; age <= max; age++) {
+            for (int bucket = 0; bucket < ageBuckets; bucket++) {
+                NavigableSet<UUID> ids = partitions.get(partitionKey((int) age, bucket));
+                if (ids != null) {
+                    for (UUID id : ids) {
+                        result.add(new Person(id, null, null, (int) age, null));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Person> selectAll() {
+        PersonTable table = persons();
+        List<Person> result = new ArrayList<>(table.rows.size());
+        table.lock.readLock().lock();
+        try {
+            for (Map.Entry<PartitionKey, Long> row : table.rows.entrySet()) {
+                ByteBuffer key = ByteBuffer.wrap(row.getKey().key);
+                result.add(decode(new UUID(key.getLong(), key.getLong()), table.slab.read(row.getValue())));
+            }
+        } finally {
+            table.lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public List<Person> selectAllPersonByAge() {
+        List<Person> result = new ArrayList<>();
+        for (Map.Entry<PartitionKey, NavigableSet<UUID>> partition : personsByAge().entrySet()) {
+            int age = ByteBuffer.wrap(partition.getKey().key).getInt(ageBuckets > 1 ? 2 : 0);
+            for (UUID id : partition.getValue()) {
+                result.add(new Person(id, null, null, age, null));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void deletePersonByAge(int age) {
+        ConcurrentSkipListMap<PartitionKey, NavigableSet<UUID>> partitions = personsByAge();
+        for (int bucket = 0; bucket < ageBuckets; bucket++) {
+            partitions.remove(partitionKey(age, bucket));
+        }
+    }
+
+    /**
+     * @return the bytes of direct memory holding the person rows.
+     */
+    public long getOffHeapBytes() {
+        PersonTable table = persons;
+        return table == null ? 0 : table.slab.getAllocatedBytes();
+    }
+
+    /**
+     * @return the bytes of the current person rows in direct memory.
+     */
+    public long getLiveOffHeapBytes() {
+        PersonTable table = persons;
+        return table == null ? 0 : table.slab.getLiveBytes();
+    }
+
+    /**
+     * @return the bytes of the replaced person rows in direct memory, given back by the next compaction.
+     */
+    public long getDeadOffHeapBytes() {
+        PersonTable table = persons;
+        return table == null ? 0 : table.slab.getFreedBytes();
+    }
+
+    /**
+     * Copies the live rows of the table into a new slab and drops the former one, whose memory is released with it.
+     */
+    private void compact(PersonTable table) {
+        table.lock.writeLock().lock();
+        try {
+            // Another insert may have compacted the slab while this one waited for the lock.
+            if (!table.needsCompaction()) {
+                return;
+            }
+            OffHeapSlab slab = new OffHeapSlab(table.chunkSize);
+            for (Map.Entry<PartitionKey, Long> row : table.rows.entrySet()) {
+                table.rows.put(row.getKey(), slab.write(table.slab.read(row.getValue())));
+            }
+            table.slab = slab;
+        } finally {
+            table.lock.writeLock().unlock();
+        }
+    }
+
+    private PersonTable persons() {
+        PersonTable table = persons;
+        if (table == null) {
+            throw new InvalidQueryException("unconfigured table " + PersonRepository.TABLE_NAME);
+        }
+        return table;
+    }
+
+    private ConcurrentSkipListMap<PartitionKey, NavigableSet<UUID>> personsByAge() {
+        ConcurrentSkipListMap<PartitionKey, NavigableSet<UUID>> table = personsByAge;
+        if (table == null) {
+            throw new InvalidQueryException("unconfigured table " + PersonRepository.TABLE_NAME_BY_AGE.toLowerCase());
+        }
+        return table;
+    }
+
+    /**
+     * The key of the personByAge partition: the age alone, or the age and the bucket serialized as a composite.
+     */
+    private PartitionKey partitionKey(int age, int bucket) {
+        if (ageBuckets == 1) {
+            return new PartitionKey(ByteBuffer.allocate(Integer.BYTES).putInt(age).array());
+        }
+        return new PartitionKey(ByteBuffer.allocate(2 * (2 + Integer.BYTES + 1))
+                .putShort((short) Integer.BYTES).putInt(age).put((byte) 0)
+                .putShort((short) Integer.BYTES).putInt(bucket).put((byte) 0)
+                .array());
+    }
+
+    private static <T> CompletableFuture<T> completed(Supplier<T> operation) {
+        try {
+            return CompletableFuture.completedFuture(operation.get());
+        } catch (RuntimeException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    private static byte[] encode(Person person) {
+        byte[] firstName = utf8(person.getFirstName());
+        byte[] lastName = utf8(person.getLastName());
+        byte[] email = utf8(person.getEmail());
+        ByteBuffer row = ByteBuffer.allocate(4 * Integer.BYTES + length(firstName) + length(lastName) + length(email));
+        row.putInt(person.getAge());
+        putString(row, firstName);
+        putString(row, lastName);
+        putString(row, email);
+        return row.array();
+    }
+
+    private static Person decode(UUID id, byte[] bytes) {
+        ByteBuffer row = ByteBuffer.wrap(bytes);
+        int age = row.getInt();
+        String firstName = getString(row);
+        String lastName = getString(row);
+        String email = getString(row);
+        return new Person(id, firstName, lastName, age, email);
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static void putString(ByteBuffer row, byte[] value) {
+        row.putInt(value == null ? -1 : value.length);
+        if (value != null) {
+            row.put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer row) {
+        int length = row.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(row.array(), row.position(), length, StandardCharsets.UTF_8);
+        row.position(row.position() + length);
+        return value;
+    }
+
+    private static class PersonTable {
+        private final ConcurrentSkipListMap<PartitionKey, Long> rows = new ConcurrentSkipListMap<>();
+
+        /**
+         * Held shared by the reads and writes of the rows, which run concurrently, and exclusively by a compaction,
+         * which moves them to a new slab.
+         */
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        private final int chunkSize;
+
+        private volatile OffHeapSlab slab;
+
+        private PersonTable(int chunkSize) {
+            this.chunkSize = chunkSize;
+            this.slab = new OffHeapSlab(chunkSize);
+        }
+
+        private boolean needsCompaction() {
+            long dead = slab.getFreedBytes();
+            return dead >= chunkSize && dead > MAX_DEAD_RATIO * (dead + slab.getLiveBytes());
+        }
+    }
+
+    /**
+     * A serialized partition key, ordered as in the ring: by Murmur3 token, then by bytes.
+     */
+    private static final class PartitionKey implements Comparable<PartitionKey> {
+
+        private final long token;
+
+        private final byte[] key;
+
+        private PartitionKey(byte[] key) {
+            this.key = key;
+            long[] hash = new long[2];
+            MurmurHash.hash3_x64_128(ByteBuffer.wrap(key), 0, key.length, 0, hash);
+            this.token = hash[0] == Long.MIN_VALUE ? Long.MAX_VALUE : hash[0];
+        }
+
+        private static PartitionKey of(UUID id) {
+            return new PartitionKey(ByteBuffer.allocate(16).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).array());
+        }
+
+        @Override
+        public int compareTo(PartitionKey other) {
+            int c = Long.compare(token, other.token);
+            if (c != 0) {
+                return c;
+            }
+            for (int i = 0; i < Math.min(key.length, other.key.length); i++) {
+                c = Integer.compare(key[i] & 0xff, other.key[i] & 0xff);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return Integer.compare(key.length, other.key.length);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PartitionKey && compareTo((PartitionKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(token);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.cassandra.repository;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only store of byte records in direct memory, addressed by a long.
+ *
+ * Records are written one after the other into chunks allocated outside the heap; the address of a record is the
+ * index of its chunk in the high 32 bits and its offset in the low 32 bits. A freed record is only accounted for:
+ * its space is given back when the whole slab is dropped, so its owner copies the live records into a new slab once
+ * the dead ones take too much of it.
+ *
+ * Writes are serialized, reads run concurrently with them. A record is visible to the threads that got its address
+ * through a safe publication, such as a concurrent map.
+ *
+ */
+class OffHeapSlab {
+
+    static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private static final int LENGTH_BYTES = Integer.BYTES;
+
+    private final int chunkSize;
+
+    private final List<ByteBuffer> chunks = new CopyOnWriteArrayList<>();
+
+    private ByteBuffer current;
+
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    private final AtomicLong writtenBytes = new AtomicLong();
+
+    private final AtomicLong freedBytes = new AtomicLong();
+
+    OffHeapSlab() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    OffHeapSlab(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Copies the record into the slab.
+     *
+     * @return the address of the record.
+     */
+    synchronized long write(byte[] record) {
+        int size = LENGTH_BYTES + record.length;
+        if (current == null || current.remaining() < size) {
+            current = ByteBuffer.allocateDirect(Math.max(chunkSize, size));
+            chunks.add(current);
+            allocatedBytes.addAndGet(current.capacity());
+        }
+        long address = ((long) (chunks.size() - 1) << 32) | current.position();
+        current.putInt(record.length).put(record);
+        writtenBytes.addAndGet(size);
+        return address;
+    }
+
+    byte[] read(long address) {
+        ByteBuffer chunk = chunks.get((int) (address >>> 32)).duplicate();
+        chunk.position((int) address);
+        byte[] record = new byte[chunk.getInt()];
+        chunk.get(record);
+        return record;
+    }
+
+    void free(long address) {
+        ByteBuffer chunk = chunks.get((int) (address >>> 32));
+        freedBytes.addAndGet(LENGTH_BYTES + chunk.getInt((int) address));
+    }
+
+    /**
+     * @return the bytes of direct memory held by the slab.
+     */
+    long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * @return the bytes of the records written and not freed.
+     */
+    long getLiveBytes() {
+        return writtenBytes.get() - freedBytes.get();
+    }
+
+    /**
+     * @return the bytes of freed records, held until the slab is dropped.
+     */
+    long getFreedBytes() {
+        return freedBytes.get();
+    }
+}
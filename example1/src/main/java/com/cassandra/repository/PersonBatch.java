@@ -0,0 +1,329 @@
+package com.cassandra.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import com.cassandra.domain.Person;
+
+/**
+ * Persons stored by column rather than one object per row.
+ *
+ * The ids are two {@code long} columns and the ages an {@code int} column. Each text column is dictionary encoded:
+ * every distinct value is kept once and the rows hold its code, in a heap or a direct buffer. A row is identified by
+ * its index, from 0 to {@link #size()}; sets of rows are {@link BitSet}s, so filters combine with {@code and}/{@code or}
+ * and aggregations run over primitives without creating a {@link Person} per row.
+ *
+ * A batch is immutable once built.
+ *
+ */
+public class PersonBatch {
+
+    private final int size;
+
+    private final long[] idMostSignificantBits;
+
+    private final long[] idLeastSignificantBits;
+
+    private final int[] ages;
+
+    private final DictionaryColumn firstNames;
+
+    private final DictionaryColumn lastNames;
+
+    private final DictionaryColumn emails;
+
+    private PersonBatch(Builder builder) {
+        this.size = builder.size;
+        this.idMostSignificantBits = Arrays.copyOf(builder.idMostSignificantBits, size);
+        this.idLeastSignificantBits = Arrays.copyOf(builder.idLeastSignificantBits, size);
+        this.ages = Arrays.copyOf(builder.ages, size);
+        this.firstNames = builder.firstNames.build(size);
+        this.lastNames = builder.lastNames.build(size);
+        this.emails = builder.emails.build(size);
+    }
+
+    /**
+     * @param offHeap whether the codes of the text columns are kept in direct memory.
+     */
+    public static Builder builder(boolean offHeap) {
+        return new Builder(offHeap);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getIdMostSignificantBits(int row) {
+        return idMostSignificantBits[row];
+    }
+
+    public long getIdLeastSignificantBits(int row) {
+        return idLeastSignificantBits[row];
+    }
+
+    public UUID getId(int row) {
+        return new UUID(idMostSignificantBits[row], idLeastSignificantBits[row]);
+    }
+
+    public int getAge(int row) {
+        return ages[row];
+    }
+
+    public DictionaryColumn getFirstNames() {
+        return firstNames;
+    }
+
+    public DictionaryColumn getLastNames() {
+        return lastNames;
+    }
+
+    public DictionaryColumn getEmails() {
+        return emails;
+    }
+
+    /**
+     * @return every row.
+     */
+    public BitSet allRows() {
+        BitSet rows = new BitSet(size);
+        rows.set(0, size);
+        return rows;
+    }
+
+    /**
+     * @return the rows whose age is between min and max, both included.
+     */
+    public BitSet whereAgeBetween(int min, int max) {
+        BitSet rows = new BitSet(size);
+        for (int row = 0; row < size; row++) {
+            if (ages[row] >= min && ages[row] <= max) {
+                rows.set(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @return the ages of the rows, in row order.
+     */
+    public IntStream ages(BitSet rows) {
+        return rows.stream().map(row -> ages[row]);
+    }
+
+    /**
+     * Passes the index of each row to the consumer, in row order.
+     */
+    public void forEach(BitSet rows, IntConsumer consumer) {
+        for (int row = rows.nextSetBit(0); row >= 0 && row < size; row = rows.nextSetBit(row + 1)) {
+            consumer.accept(row);
+        }
+    }
+
+    public Person toPerson(int row) {
+        return new Person(getId(row), firstNames.get(row), lastNames.get(row), ages[row], emails.get(row));
+    }
+
+    public List<Person> toPersons() {
+        List<Person> persons = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            persons.add(toPerson(row));
+        }
+        return persons;
+    }
+
+    /**
+     * A text column holding each distinct value once.
+     */
+    public static class DictionaryColumn {
+
+        /**
+         * The code of the rows without a value.
+         */
+        public static final int NULL_CODE = -1;
+
+        private final List<String> dictionary;
+
+        private final Map<String, Integer> codes;
+
+        private final IntBuffer rowCodes;
+
+        private DictionaryColumn(List<String> dictionary, Map<String, Integer> codes, IntBuffer rowCodes) {
+            this.dictionary = dictionary;
+            this.codes = codes;
+            this.rowCodes = rowCodes;
+        }
+
+        public String get(int row) {
+            int code = rowCodes.get(row);
+            return code == NULL_CODE ? null : dictionary.get(code);
+        }
+
+        /**
+         * @return the code of the value of the row, its index in the dictionary, or {@link #NULL_CODE}.
+         */
+        public int getCode(int row) {
+            return rowCodes.get(row);
+        }
+
+        /**
+         * @return the code of the value, or {@link #NULL_CODE} for null, or -2 if no row has that value.
+         */
+        public int codeOf(String value) {
+            if (value == null) {
+                return NULL_CODE;
+            }
+            Integer code = codes.get(value);
+            return code == null ? -2 : code;
+        }
+
+        /**
+         * @return the distinct values, indexed by code.
+         */
+        public List<String> getDictionary() {
+            return dictionary;
+        }
+
+        /**
+         * @return the rows holding the value, compared by code.
+         */
+        public BitSet whereEquals(String value) {
+            int code = codeOf(value);
+            int size = rowCodes.limit();
+            BitSet rows = new BitSet(size);
+            for (int row = 0; row < size; row++) {
+                if (rowCodes.get(row) == code) {
+                    rows.set(row);
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * Counts the rows of each value, without decoding them.
+         *
+         * @return the number of rows per value, null included, in the order of the dictionary.
+         */
+        public Map<String, Integer> countByValue(BitSet rows) {
+            int[] counts = new int[dictionary.size() + 1];
+            int size = rowCodes.limit();
+            for (int row = rows.nextSetBit(0); row >= 0 && row < size; row = rows.nextSetBit(row + 1)) {
+                counts[rowCodes.get(row) + 1]++;
+            }
+            Map<String, Integer> result = new LinkedHashMap<>();
+            for (int code = NULL_CODE; code < dictionary.size(); code++) {
+                if (counts[code + 1] > 0) {
+                    result.put(code == NULL_CODE ? null : dictionary.get(code), counts[code + 1]);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Appends the persons row by row, growing the columns as needed.
+     */
+    public static class Builder {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private int size;
+
+        private long[] idMostSignificantBits = new long[INITIAL_CAPACITY];
+
+        private long[] idLeastSignificantBits = new long[INITIAL_CAPACITY];
+
+        private int[] ages = new int[INITIAL_CAPACITY];
+
+        private final DictionaryBuilder firstNames;
+
+        private final DictionaryBuilder lastNames;
+
+        private final DictionaryBuilder emails;
+
+        private Builder(boolean offHeap) {
+            this.firstNames = new DictionaryBuilder(offHeap);
+            this.lastNames = new DictionaryBuilder(offHeap);
+            this.emails = new DictionaryBuilder(offHeap);
+        }
+
+        public Builder add(Person person) {
+            return add(person.getId(), person.getFirstName(), person.getLastName(), person.getAge(), person.getEmail());
+        }
+
+        public Builder add(UUID id, String firstName, String lastName, int age, String email) {
+            if (size == ages.length) {
+                int capacity = size * 2;
+                idMostSignificantBits = Arrays.copyOf(idMostSignificantBits, capacity);
+                idLeastSignificantBits = Arrays.copyOf(idLeastSignificantBits, capacity);
+                ages = Arrays.copyOf(ages, capacity);
+            }
+            idMostSignificantBits[size] = id.getMostSignificantBits();
+            idLeastSignificantBits[size] = id.getLeastSignificantBits();
+            ages[size] = age;
+            firstNames.add(size, firstName);
+            lastNames.add(size, lastName);
+            emails.add(size, email);
+            size++;
+            return this;
+        }
+
+        public PersonBatch build() {
+            return new PersonBatch(this);
+        }
+    }
+
+    private static class DictionaryBuilder {
+
+        private final boolean offHeap;
+
+        private final List<String> dictionary = new ArrayList<>();
+
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        private IntBuffer rowCodes;
+
+        private DictionaryBuilder(boolean offHeap) {
+            this.offHeap = offHeap;
+            this.rowCodes = allocate(Builder.INITIAL_CAPACITY);
+        }
+
+        private void add(int row, String value) {
+            if (row == rowCodes.capacity()) {
+                IntBuffer grown = allocate(row * 2);
+                rowCodes.clear();
+                grown.put(rowCodes);
+                rowCodes = grown;
+            }
+            int code = DictionaryColumn.NULL_CODE;
+            if (value != null) {
+                code = codes.computeIfAbsent(value, v -> {
+                    dictionary.add(v);
+                    return dictionary.size() - 1;
+                });
+            }
+            rowCodes.put(row, code);
+        }
+
+        private DictionaryColumn build(int size) {
+            IntBuffer column = allocate(size);
+            IntBuffer filled = rowCodes.duplicate();
+            filled.clear().limit(size);
+            column.put(filled).flip();
+            return new DictionaryColumn(new ArrayList<>(dictionary), new HashMap<>(codes), column.asReadOnlyBuffer());
+        }
+
+        private IntBuffer allocate(int capacity) {
+            return offHeap ? ByteBuffer.allocateDirect(capacity * Integer.BYTES).asIntBuffer() : IntBuffer.allocate(capacity);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.cassandra.repository;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cassandra.domain.Person;
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Configuration;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.Metadata;
+
+/**
+ * Loads large amounts of persons into the person and personByAge tables, and the personByEmail table when the
+ * repository maintains the email index.
+ *
+ * Rows are grouped before being sent: personByAge rows by partition (age and bucket), person rows by the set of
+ * replicas owning their id and personByEmail rows by the set of replicas owning their email. Each group is written as
+ * a small UNLOGGED batch routed by the token-aware policy to one of those replicas, and a configurable number of
+ * batches run in parallel.
+ *
+ */
+public class PersonBulkLoader {
+    private static final Logger LOG = LoggerFactory.getLogger(PersonBulkLoader.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 10;
+
+    public static final int DEFAULT_PARALLELISM = 16;
+
+    private final PersonRepository repository;
+
+    private final int batchSize;
+
+    private final int parallelism;
+
+    private final Semaphore inFlightBatches;
+
+    private final AtomicLong rowsWritten = new AtomicLong();
+
+    private final AtomicLong rowsFailed = new AtomicLong();
+
+    private final ConcurrentLinkedQueue<Person> failedPersons = new ConcurrentLinkedQueue<>();
+
+    public PersonBulkLoader(PersonRepository repository) {
+        this(repository, DEFAULT_BATCH_SIZE, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param repository the repository providing the session and the insert statements.
+     * @param batchSize the maximum number of rows per batch.
+     * @param parallelism the maximum number of batches in flight.
+     */
+    public PersonBulkLoader(PersonRepository repository, int batchSize, int parallelism) {
+        if (batchSize < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("batchSize and parallelism must be at least 1");
+        }
+        this.repository = repository;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.inFlightBatches = new Semaphore(parallelism);
+    }
+
+    /**
+     * Writes every person to the person and personByAge tables, and personByEmail with the email index, and waits for
+     * all batches to complete.
+     *
+     * A loader instance is meant to be used for a single load.
+     *
+     * @param persons the persons to write, consumed only once.
+     * @return the number of written and failed rows and the throughput.
+     */
+    public BulkLoadResult load(Iterable<Person> persons) {
+        long start = System.nanoTime();
+
+        Configuration configuration = repository.getSession().getCluster().getConfiguration();
+        Metadata metadata = repository.getSession().getCluster().getMetadata();
+
+        Map<Set<Host>, Group> personGroups = new HashMap<>();
+        Map<List<Integer>, Group> personByAgeGroups = new HashMap<>();
+        Map<Set<Host>, Group> personByEmailGroups = new HashMap<>();
+
+        for (Person person : persons) {
+            BoundStatement insert = repository.bindInsertPerson(person);
+            Set<Host> replicas = replicas(metadata, configuration, insert);
+            add(personGroups.computeIfAbsent(replicas, k -> new Group()), person, insert);
+
+            List<Integer> partition = Arrays.asList(person.getAge(), repository.ageBucket(person.getId()));
+            add(personByAgeGroups.computeIfAbsent(partition, k -> new Group()), person, repository.bindInsertPersonByAge(person));
+
+            if (repository.isEmailIndexed() && person.getEmail() != null) {
+                BoundStatement insertByEmail = repository.bindInsertPersonByEmail(person);
+                Set<Host> emailReplicas = replicas(metadata, configuration, insertByEmail);
+                add(personByEmailGroups.computeIfAbsent(emailReplicas, k -> new Group()), person, insertByEmail);
+            }
+        }
+        for (Group group : personGroups.values()) {
+            flush(group);
+        }
+        for (Group group : personByAgeGroups.values()) {
+            flush(group);
+        }
+        for (Group group : personByEmailGroups.values()) {
+            flush(group);
+        }
+
+        // Wait for the last batches.
+        inFlightBatches.acquireUninterruptibly(parallelism);
+        inFlightBatches.release(parallelism);
+
+        BulkLoadResult result = new BulkLoadResult(rowsWritten.get(), rowsFailed.get(), System.nanoTime() - start, new ArrayList<>(new LinkedHashSet<>(failedPersons)));
+        LOG.info("Bulk load finished: " + result);
+        return result;
+    }
+
+    private Set<Host> replicas(Metadata metadata, Configuration configuration, BoundStatement statement) {
+        ByteBuffer routingKey = statement.getRoutingKey(configuration.getProtocolOptions().getProtocolVersion(), configuration.getCodecRegistry());
+        if (routingKey == null || statement.getKeyspace() == null) {
+            return Collections.emptySet();
+        }
+        return metadata.getReplicas(Metadata.quote(statement.getKeyspace()), routingKey);
+    }
+
+    private void add(Group group, Person person, BoundStatement statement) {
+        group.persons.add(person);
+        group.batch.add(statement);
+        if (group.batch.size() >= batchSize) {
+            flush(group);
+        }
+    }
+
+    private void flush(Group group) {
+        if (group.batch.size() == 0) {
+            return;
+        }
+        BatchStatement batch = group.batch;
+        List<Person> persons = group.persons;
+        group.batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+        group.persons = new ArrayList<>();
+
+        inFlightBatches.acquireUninterruptibly();
+        try {
+            repository.getExecutor().executeAsync(batch).whenComplete((rs, error) -> {
+                if (error == null) {
+                    rowsWritten.addAndGet(persons.size());
+                } else {
+                    LOG.warn("Failed to write a batch of " + persons.size() + " rows", error);
+                    rowsFailed.addAndGet(persons.size());
+                    failedPersons.addAll(persons);
+                }
+                inFlightBatches.release();
+            });
+        } catch (RuntimeException e) {
+            inFlightBatches.release();
+            throw e;
+        }
+    }
+
+    private static class Group {
+        private BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+
+        private List<Person> persons = new ArrayList<>();
+    }
+}
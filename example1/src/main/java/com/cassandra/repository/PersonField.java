@@ -0,0 +1,41 @@
+package com.cassandra.repository;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The fields of a {@link com.cassandra.domain.Person}, with the column of the persons table holding each of them.
+ *
+ * A set of fields is a projection: the reads taking one select only those columns, and leave the other fields of the
+ * persons to {@code null} (or 0).
+ *
+ */
+public enum PersonField {
+
+    ID("id"),
+
+    FIRST_NAME("firstname"),
+
+    LAST_NAME("lastname"),
+
+    EMAIL("email"),
+
+    AGE("age");
+
+    private final String column;
+
+    PersonField(String column) {
+        this.column = column;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * @return the columns of the fields, separated by commas, in the order of the enum.
+     */
+    static String columns(Set<PersonField> fields) {
+        return fields.stream().sorted().map(PersonField::getColumn).collect(Collectors.joining(", "));
+    }
+}
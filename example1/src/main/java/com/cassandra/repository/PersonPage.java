@@ -0,0 +1,40 @@
+package com.cassandra.repository;
+
+import java.util.List;
+
+import com.cassandra.domain.Person;
+import com.datastax.driver.core.PagingState;
+
+/**
+ * One page of persons, with the paging state needed to fetch the next page.
+ *
+ * The paging state can be serialized with {@link PagingState#toString()} and restored with
+ * {@link PagingState#fromString(String)}, so a scan can be resumed later or by another process.
+ *
+ */
+public class PersonPage {
+
+    private final List<Person> persons;
+
+    private final PagingState nextPagingState;
+
+    PersonPage(List<Person> persons, PagingState nextPagingState) {
+        this.persons = persons;
+        this.nextPagingState = nextPagingState;
+    }
+
+    public List<Person> getPersons() {
+        return persons;
+    }
+
+    /**
+     * @return the paging state of the next page, or {@code null} if this is the last page.
+     */
+    public PagingState getNextPagingState() {
+        return nextPagingState;
+    }
+
+    public boolean hasNextPage() {
+        return nextPagingState != null;
+    }
+}
@@ -0,0 +1,186 @@
+package com.cassandra.repository;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.cassandra.domain.Person;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
+
+/**
+ * Publishes the persons read by a statement, fetching the pages as the subscriber requests persons.
+ *
+ * Each subscription runs its own scan: the query is sent on the first request, and the next page is fetched
+ * asynchronously once the current one has been delivered and more persons are requested. A scan therefore never
+ * holds more than one page of rows. Cancelling the subscription stops the scan; no further page is fetched.
+ *
+ * On Java 9 and later, {@code org.reactivestreams.FlowAdapters.toFlowPublisher} turns it into a
+ * {@code java.util.concurrent.Flow.Publisher}.
+ *
+ */
+public class PersonPublisher implements Publisher<Person> {
+
+    private final StatementExecutor executor;
+
+    private final Supplier<Statement> statement;
+
+    private final int fetchSize;
+
+    private final Function<Row, Person> mapper;
+
+    PersonPublisher(StatementExecutor executor, Supplier<Statement> statement, int fetchSize, Function<Row, Person> mapper) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetchSize must be at least 1, got " + fetchSize);
+        }
+        this.executor = executor;
+        this.statement = statement;
+        this.fetchSize = fetchSize;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Person> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        subscriber.onSubscribe(new Scan(subscriber));
+    }
+
+    /**
+     * Delivers the rows from a single thread at a time: whichever thread finds the work counter at zero runs the
+     * drain loop, the others only record that there is more to do.
+     */
+    private class Scan implements Subscription {
+
+        private final Subscriber<? super Person> subscriber;
+
+        private final AtomicLong demand = new AtomicLong();
+
+        private final AtomicInteger work = new AtomicInteger();
+
+        private volatile boolean cancelled;
+
+        private volatile ResultSet page;
+
+        private volatile Throwable error;
+
+        private volatile boolean fetching;
+
+        private boolean started;
+
+        private boolean done;
+
+        private Scan(Subscriber<? super Person> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("The number of persons requested must be positive, got " + n);
+            } else {
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void drain() {
+            if (work.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                deliver();
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliver() {
+            if (cancelled || done || fetching) {
+                return;
+            }
+            if (error != null) {
+                fail(error);
+                return;
+            }
+            if (!started) {
+                if (demand.get() > 0) {
+                    started = true;
+                    Statement first = statement.get();
+                    first.setFetchSize(fetchSize);
+                    fetch(() -> executor.executeAsync(first));
+                }
+                return;
+            }
+
+            ResultSet rs = page;
+            long requested = demand.get();
+            long emitted = 0;
+            while (emitted < requested && rs.getAvailableWithoutFetching() > 0) {
+                if (cancelled) {
+                    return;
+                }
+                Person person;
+                try {
+                    person = mapper.apply(rs.one());
+                } catch (RuntimeException e) {
+                    fail(e);
+                    return;
+                }
+                subscriber.onNext(person);
+                emitted++;
+            }
+            if (emitted > 0 && requested != Long.MAX_VALUE) {
+                requested = demand.addAndGet(-emitted);
+            }
+            if (cancelled || rs.getAvailableWithoutFetching() > 0) {
+                return;
+            }
+            if (rs.isFullyFetched()) {
+                done = true;
+                subscriber.onComplete();
+            } else if (requested > 0) {
+                fetch(() -> executor.fetchMoreResults(rs));
+            }
+        }
+
+        private void fetch(Supplier<CompletableFuture<ResultSet>> request) {
+            fetching = true;
+            CompletableFuture<ResultSet> next;
+            try {
+                next = request.get();
+            } catch (RuntimeException e) {
+                next = new CompletableFuture<>();
+                next.completeExceptionally(e);
+            }
+            next.whenComplete((rs, failure) -> {
+                if (failure != null) {
+                    error = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                } else {
+                    page = rs;
+                }
+                fetching = false;
+                drain();
+            });
+        }
+
+        private void fail(Throwable failure) {
+            done = true;
+            cancelled = true;
+            subscriber.onError(failure);
+        }
+    }
+}
@@ -1,23 +1,178 @@
 package com.cassandra.repository;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.cassandra.domain.Person;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PagingState;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+
+public class PersonRepository implements PersonStorage {
+    private static final Logger LOG = LoggerFactory.getLogger(PersonRepository.class);
+
+    static final String TABLE_NAME = "person";
+
+    static final String TABLE_NAME_BY_AGE = TABLE_NAME + "ByAge";
+
+    static final String TABLE_NAME_BY_EMAIL = TABLE_NAME + "ByEmail";
+
+    private static final String INSERT_PERSON = "INSERT INTO " + TABLE_NAME + "(id, firstname, lastname, email, age) VALUES (?, ?, ?, ?, ?);";
+
+    private static final String INSERT_PERSON_BY_AGE = "INSERT INTO " + TABLE_NAME_BY_AGE + "(age, id) VALUES (?, ?);";
+
+    private static final String SELECT_BY_AGE = "SELECT age, id FROM " + TABLE_NAME_BY_AGE + " WHERE age = ?;";
+
+    private static final String SELECT_BY_ID = "SELECT id, firstname, lastname, email, age FROM " + TABLE_NAME + " WHERE id = ?;";
+
+    private static final String SELECT_ALL = "SELECT id, firstname, lastname, email, age FROM " + TABLE_NAME + ";";
+
+    private static final String SELECT_ALL_BY_AGE = "SELECT age, id FROM " + TABLE_NAME_BY_AGE + ";";
+
+    private static final String DELETE_BY_AGE = "DELETE FROM " + TABLE_NAME_BY_AGE + " WHERE age = ?;";
+
+    private static final String INSERT_PERSON_BY_AGE_BUCKET = "INSERT INTO " + TABLE_NAME_BY_AGE + "(age, bucket, id) VALUES (?, ?, ?);";
+
+    private static final String SELECT_BY_AGE_BUCKET = "SELECT age, id FROM " + TABLE_NAME_BY_AGE + " WHERE age = ? AND bucket = ?;";
+
+    private static final String DELETE_BY_AGE_BUCKET = "DELETE FROM " + TABLE_NAME_BY_AGE + " WHERE age = ? AND bucket = ?;";
+
+    private static final String DELETE_PERSON_BY_AGE = "DELETE FROM " + TABLE_NAME_BY_AGE + " WHERE age = ? AND id = ?;";
+
+    private static final String DELETE_PERSON_BY_AGE_BUCKET = "DELETE FROM " + TABLE_NAME_BY_AGE + " WHERE age = ? AND bucket = ? AND id = ?;";
+
+    private static final String SELECT_EMAIL_BY_ID = "SELECT email FROM " + TABLE_NAME + " WHERE id = ?;";
+
+    private static final String DELETE_PERSON = "DELETE FROM " + TABLE_NAME + " WHERE id = ?;";
+
+    private static final String INSERT_PERSON_BY_EMAIL = "INSERT INTO " + TABLE_NAME_BY_EMAIL + "(email, id, firstname, lastname, age) VALUES (?, ?, ?, ?, ?);";
+
+    private static final String SELECT_BY_EMAIL = "SELECT id, firstname, lastname, email, age FROM " + TABLE_NAME_BY_EMAIL + " WHERE email = ?;";
 
-public class PersonRepository {
+    private static final String DELETE_PERSON_BY_EMAIL = "DELETE FROM " + TABLE_NAME_BY_EMAIL + " WHERE email = ? AND id = ?;";
 
-    private static final String TABLE_NAME = "person";
+    private static final String SELECT_AGES = "SELECT id, age, WRITETIME(age) FROM " + TABLE_NAME + ";";
 
-    private static final String TABLE_NAME_BY_AGE = TABLE_NAME + "ByAge";
+    private static final String SELECT_AGE_BY_ID = "SELECT age FROM " + TABLE_NAME + " WHERE id = ?;";
+
+    private static final String SELECT_PERSON_BY_AGE = "SELECT id FROM " + TABLE_NAME_BY_AGE + " WHERE age = ? AND id = ?;";
+
+    private static final String SELECT_PERSON_BY_AGE_BUCKET = "SELECT id FROM " + TABLE_NAME_BY_AGE + " WHERE age = ? AND bucket = ? AND id = ?;";
+
+    private static final int RECONCILE_FETCH_SIZE = 1000;
+
+    public static final int DEFAULT_MULTI_GET_CONCURRENCY = 64;
+
+    /**
+     * The maximum number of ages a range select may span; every age is queried as a separate partition.
+     */
+    public static final int MAX_AGE_RANGE = 1000;
 
     private Session session;
 
+    private PreparedStatementRegistry statements;
+
+    private StatementExecutor executor;
+
+    private final int ageBuckets;
+
+    private final RepositoryMetrics metrics;
+
+    private final PersonRetryLog retryLog;
+
+    private final boolean emailIndex;
+
+    private final PersonRowMapper personMapper = new PersonRowMapper();
+
+    private final PersonRowMapper personByAgeMapper = new PersonRowMapper();
+
+    private final PersonRowMapper personByEmailMapper = new PersonRowMapper();
+
+    private final Map<Set<PersonField>, Projection> projections = new ConcurrentHashMap<>();
+
     public PersonRepository(Session session) {
+        this(session, StatementExecutor.DEFAULT_MAX_IN_FLIGHT_REQUESTS);
+    }
+
+    /**
+     * @param session the session to run the statements on.
+     * @param maxInFlightRequests the maximum number of asynchronous requests running at the same time.
+     */
+    public PersonRepository(Session session, int maxInFlightRequests) {
+        this(session, PersonRepositoryConfig.builder().withMaxInFlightRequests(maxInFlightRequests).build());
+    }
+
+    /**
+     * @param session the session to run the statements on.
+     * @param config the settings of the repository.
+     */
+    public PersonRepository(Session session, PersonRepositoryConfig config) {
         this.session = session;
+        this.statements = PreparedStatementRegistry.of(session);
+        this.metrics = config.getMetricRegistry() == null
+                ? RepositoryMetrics.disabled()
+                : new RepositoryMetrics(config.getMetricRegistry(), MetricRegistry.name(PersonRepository.class));
+        this.executor = new StatementExecutor(session, config.getMaxInFlightRequests(), metrics, config.getConcurrencyLimiter(), config.getQueryTracer());
+        this.ageBuckets = config.getAgeBuckets();
+        this.retryLog = config.getRetryLog() == null ? null : new PersonRetryLog(config.getRetryLog());
+        this.emailIndex = config.isEmailIndexed();
+        if (retryLog != null && getRetryLogSize() > 0) {
+            try {
+                replayRetryLog();
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to replay the retry log " + retryLog.getPath(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns the queries run by a repository, to be prepared ahead of the first requests.
+     *
+     * @param ageBuckets the number of age buckets of the repository, 1 without buckets.
+     * @return the queries matching the personByAge layout of the repository.
+     * @see com.cassandra.CassandraConnectorConfig.Builder#withWarmupQueries(java.util.Collection)
+     */
+    public static List<String> getQueries(int ageBuckets) {
+        if (ageBuckets > 1) {
+            return Arrays.asList(INSERT_PERSON, SELECT_BY_ID, SELECT_ALL, SELECT_ALL_BY_AGE,
+                    INSERT_PERSON_BY_AGE_BUCKET, SELECT_BY_AGE_BUCKET, DELETE_BY_AGE_BUCKET, DELETE_PERSON_BY_AGE_BUCKET);
+        }
+        return Arrays.asList(INSERT_PERSON, SELECT_BY_ID, SELECT_ALL, SELECT_ALL_BY_AGE,
+                INSERT_PERSON_BY_AGE, SELECT_BY_AGE, DELETE_BY_AGE, DELETE_PERSON_BY_AGE);
     }
 
     /**
@@ -33,21 +188,46 @@ public class PersonRepository {
                 .append("email text);");
 
         final String query = sb.toString();
-        session.execute(query);
+        metrics.time("createTable", () -> executeSchemaChange(query));
     }
 
     /**
      * Creates the persons table.
+     *
+     * When the repository uses age buckets, the partition key is {@code (age, bucket)} instead of age alone.
      */
     public void createTablePersonsByAge() {
         StringBuilder sb = new StringBuilder("CREATE TABLE IF NOT EXISTS ")
                 .append(TABLE_NAME_BY_AGE)
                 .append("(").append("id uuid, ")
+                .append("age int,");
+        if (isBucketed()) {
+            sb.append("bucket int,")
+                    .append("PRIMARY KEY ((age, bucket), id));");
+        } else {
+            sb.append("PRIMARY KEY (age, id));");
+        }
+
+        final String query = sb.toString();
+        metrics.time("createTablePersonsByAge", () -> executeSchemaChange(query));
+    }
+
+    /**
+     * Creates the personByEmail table, holding a copy of each person in the partition of its email.
+     */
+    public void createTablePersonsByEmail() {
+        StringBuilder sb = new StringBuilder("CREATE TABLE IF NOT EXISTS ")
+                .append(TABLE_NAME_BY_EMAIL)
+                .append("(")
+                .append("email text, ")
+                .append("id uuid, ")
+                .append("firstname text,")
+                .append("lastname text,")
                 .append("age int,")
-                .append("PRIMARY KEY (age, id));");
+                .append("PRIMARY KEY (email, id));");
 
         final String query = sb.toString();
-        session.execute(query);
+        metrics.time("createTablePersonsByEmail", () -> executeSchemaChange(query));
     }
 
     /**
@@ -63,31 +243,28 @@ public class PersonRepository {
                 .append(";");
 
         final String query = sb.toString();
-        session.execute(query);
+        metrics.time("alterTablepersons", () -> executeSchemaChange(query));
     }
 
     /**
      * Insert a row in the table persons. 
      * 
+     * With the email index, the row and the personByEmail row are written with a logged batch.
+     * 
      * @param person
      */
     public void insertPerson(Person person) {
-        StringBuilder sb = new StringBuilder("INSERT INTO ")
-                .append(TABLE_NAME)
-                .append("(id, firstname, lastname, email, age) ")
-                .append("VALUES (")
-                .append(person.getId()).append(", '")
-                .append(person.getFirstName())
-                .append("', '")
-                .append(person.getLastName())
-                .append("', '")
-                .append(person.getEmail())
-                .append("', ")
-                .append(person.getAge())
-                .append(");");
+        metrics.time("insertPerson", () -> executor.execute(bindWritePerson(person, false)));
+    }
 
-        final String query = sb.toString();
-        session.execute(query);
+    /**
+     * Asynchronously insert a row in the table persons.
+     *
+     * @param person
+     * @return a future completed once the row is written.
+     */
+    public CompletableFuture<Void> insertPersonAsync(Person person) {
+        return metrics.timeAsync("insertPersonAsync", () -> bindWritePersonAsync(person, false).thenCompose(executor::executeAsync).thenApply(rs -> null));
     }
 
     /**
@@ -95,76 +272,380 @@ public class PersonRepository {
      * @param person
      */
     public void insertPersonByAge(Person person) {
-        StringBuilder sb = new StringBuilder("INSERT INTO ")
-                .append(TABLE_NAME_BY_AGE).append("(age, id) ")
-                .append("VALUES (")
-                .append(person.getAge())
-                .append(", ")
-                .append(person.getId())
-                .append(");");
+        metrics.time("insertPersonByAge", () -> executor.execute(bindInsertPersonByAge(person)));
+    }
 
-        final String query = sb.toString();
-        session.execute(query);
+    /**
+     * Asynchronously insert a row in the table personsByAge.
+     *
+     * @param person
+     * @return a future completed once the row is written.
+     */
+    public CompletableFuture<Void> insertPersonByAgeAsync(Person person) {
+        return metrics.timeAsync("insertPersonByAgeAsync", () -> executor.executeAsync(bindInsertPersonByAge(person)).thenApply(rs -> null));
     }
 
     /**
      * Insert a person into two identical tables using a batch query.
+     *
+     * With dual writes, the two inserts run concurrently instead, and an insert that fails is kept in the retry log.
      * 
      * @param person
      */
     public void insertPersonBatch(Person person) {
-        StringBuilder sb = new StringBuilder("BEGIN BATCH ")
-                .append("INSERT INTO ")
-                .append(TABLE_NAME)
-                .append("(id, firstname, lastname, email, age) ")
-                .append("VALUES (")
-                .append(person.getId()).append(", '")
-                .append(person.getFirstName())
-                .append("', '")
-                .append(person.getLastName())
-                .append("', '")
-                .append(person.getEmail())
-                .append("', ")
-                .append(person.getAge())
-                .append(");")
-                .append("INSERT INTO ")
-                .append(TABLE_NAME_BY_AGE)
-                .append("(id, age) ")
-                .append("VALUES (")
-                .append(person.getId())
-                .append(", ")
-                .append(person.getAge())
-                .append(");")
-                .append("APPLY BATCH;");
+        if (retryLog != null) {
+            metrics.time("insertPersonBatch", () -> await(insertPersonDualWrite(person)));
+        } else {
+            metrics.time("insertPersonBatch", () -> executor.execute(bindWritePerson(person, true)));
+        }
+    }
 
-        final String query = sb.toString();
-        session.execute(query);
+    /**
+     * Asynchronously insert a person into two identical tables using a batch query.
+     *
+     * @param person
+     * @return a future completed once the batch is applied; with dual writes, once both inserts are written or kept
+     *         in the retry log.
+     */
+    public CompletableFuture<Void> insertPersonBatchAsync(Person person) {
+        if (retryLog != null) {
+            return metrics.timeAsync("insertPersonBatchAsync", () -> insertPersonDualWrite(person));
+        }
+        return metrics.timeAsync("insertPersonBatchAsync", () -> bindWritePersonAsync(person, true).thenCompose(executor::executeAsync).thenApply(rs -> null));
     }
 
     /**
-     * Select person by id.
-     * 
-     * @return
+     * Writes again the inserts kept in the retry log. Those failing again stay in the log.
+     *
+     * This is done when the repository is created; it can be called again once the cluster is healthy.
+     *
+     * @return the number of inserts written.
      */
-    public Person selectByAge(int age) {
-        StringBuilder sb = new StringBuilder("SELECT * FROM ")
-                .append(TABLE_NAME_BY_AGE)
-                .append(" WHERE age = ")
-                .append(age)
-                .append(";");
+    public int replayRetryLog() {
+        checkDualWrites();
+        return metrics.timeCall("replayRetryLog", () -> {
+            int replayed = retryLog.replay((target, person, timestamp) -> {
+                BoundStatement insert = target == PersonRetryLog.Target.PERSON ? bindInsertPerson(person) : bindInsertPersonByAge(person);
+                // The original timestamp: a newer write of the person done meanwhile is not overwritten.
+                insert.setDefaultTimestamp(timestamp);
+                executor.execute(insert.setIdempotent(true));
+            });
+            LOG.info("Replayed " + replayed + " inserts from the retry log " + retryLog.getPath());
+            return replayed;
+        });
+    }
 
-        final String query = sb.toString();
+    /**
+     * @return the number of inserts waiting in the retry log.
+     */
+    public int getRetryLogSize() {
+        checkDualWrites();
+        return retryLog.size();
+    }
+
+    /**
+     * Compares the personByAge table with the persons table and repairs it: persons without a personByAge row get
+     * one, and personByAge rows whose person is missing or has another age are deleted.
+     *
+     * Each table is read page by page, in token order, and every row is looked up in the other table; the lookups of
+     * a page are awaited before the next one is read, so at most one page is held in memory. The pass may run while
+     * persons are written: the writes done after it started are left to their writers. Persons whose age was written
+     * later are skipped, as are persons without an age. Both repairs carry the start time of the pass, so neither
+     * overwrites a newer write, and a row restored by a later pass is newer than a tombstone left by an earlier one.
+     *
+     * @return the number of rows repaired.
+     */
+    public ReconcileResult reconcilePersonByAge() {
+        return metrics.timeCall("reconcilePersonByAge", () -> {
+            long start = System.nanoTime();
+            long scanStart = clientTimestamp();
+            AtomicLong missingRows = new AtomicLong();
+            AtomicLong orphanRows = new AtomicLong();
+
+            long personsChecked = forEachPage(bindRead(SELECT_AGES), row -> {
+                if (row.isNull(1) || row.getLong(2) > scanStart) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                Person person = new Person(row.getUUID(0), null, null, row.getInt(1), null);
+                return executor.executeAsync(bindSelectPersonByAge(person)).thenApply(rs -> {
+                    if (rs.one() != null) {
+                        return null;
+                    }
+                    missingRows.incrementAndGet();
+                    return () -> bindInsertPersonByAge(person).setDefaultTimestamp(scanStart).setIdempotent(true);
+                });
+            });
+            forEachPage(bindRead(SELECT_ALL_BY_AGE), row -> {
+                Person indexed = personByAgeMapper.map(row);
+                return executor.executeAsync(bindRead(SELECT_AGE_BY_ID, indexed.getId())).thenApply(rs -> {
+                    Row person = rs.one();
+                    if (person != null && person.getInt(0) == indexed.getAge()) {
+                        return null;
+                    }
+                    orphanRows.incrementAndGet();
+                    // A row written again since the pass started is newer than this tombstone, and kept.
+                    return () -> bindDeletePersonByAge(indexed).setDefaultTimestamp(scanStart).setIdempotent(true);
+                });
+            });
 
-        ResultSet rs = session.execute(query);
+            ReconcileResult result = new ReconcileResult(personsChecked, missingRows.get(), orphanRows.get(), System.nanoTime() - start);
+            LOG.info("Reconciled " + TABLE_NAME_BY_AGE + ": " + result);
+            return result;
+        });
+    }
 
-        List<Person> persons = new ArrayList<Person>();
+    /**
+     * Insert many persons into the persons and personsByAge tables using grouped unlogged batches.
+     *
+     * @param persons the persons to insert.
+     * @return the number of written and failed rows and the throughput.
+     */
+    public BulkLoadResult insertPersons(Iterable<Person> persons) {
+        return metrics.timeCall("insertPersons", () -> new PersonBulkLoader(this).load(persons));
+    }
 
-        for (Row r : rs) {
-            Person s = new Person(r.getUUID("id"), null, null, r.getInt("age"), null);
-            persons.add(s);
+    /**
+     * Insert many persons into the persons and personsByAge tables using grouped unlogged batches.
+     *
+     * @param persons the persons to insert.
+     * @param batchSize the maximum number of rows per batch.
+     * @param parallelism the maximum number of batches in flight.
+     * @return the number of written and failed rows and the throughput.
+     */
+    public BulkLoadResult insertPersons(Iterable<Person> persons, int batchSize, int parallelism) {
+        return metrics.timeCall("insertPersons", () -> new PersonBulkLoader(this, batchSize, parallelism).load(persons));
+    }
+
+    /**
+     * Select a person from persons by id.
+     *
+     * @return the person, or {@code null} if there is none with that id.
+     */
+    public Person selectById(UUID id) {
+        return metrics.timeCall("selectById", () -> {
+            Row r = executor.execute(bindRead(SELECT_BY_ID, id)).one();
+            return r == null ? null : personMapper.map(r);
+        });
+    }
+
+    /**
+     * Asynchronously select a person from persons by id.
+     *
+     * @return a future completed with the person, or with {@code null} if there is none with that id.
+     */
+    public CompletableFuture<Person> selectByIdAsync(UUID id) {
+        return metrics.timeAsync("selectByIdAsync", () -> executor.executeAsync(bindRead(SELECT_BY_ID, id)).thenApply(rs -> {
+            Row r = rs.one();
+            return r == null ? null : personMapper.map(r);
+        }));
+    }
+
+    /**
+     * Select a person from persons by id, reading only the columns of the fields.
+     *
+     * @param fields the fields to fill, the others are left to {@code null} (or 0).
+     * @return the person, or {@code null} if there is none with that id.
+     */
+    public Person selectById(UUID id, Set<PersonField> fields) {
+        Projection projection = projection(fields);
+        return metrics.timeCall("selectByIdProjected", () -> {
+            Row r = executor.execute(bindRead(projection.selectById, id)).one();
+            return r == null ? null : projection.mapper.map(r);
+        });
+    }
+
+    /**
+     * Select persons by id, with at most {@link #DEFAULT_MULTI_GET_CONCURRENCY} reads at a time and no timeout.
+     *
+     * @see #selectByIds(Collection, int, long, TimeUnit)
+     */
+    public MultiGetResult selectByIds(Collection<UUID> ids) {
+        return selectByIds(ids, DEFAULT_MULTI_GET_CONCURRENCY, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Select persons by id with one single-partition read per id, run concurrently.
+     *
+     * Each read is routed by the token-aware policy to a replica of its id, whereas an IN query would make one
+     * coordinator gather every partition. The reads are started from the calling thread as the previous ones complete.
+     * At the timeout, the reads not started or still running are given up and their ids reported as unresolved, along
+     * with those of the reads that failed.
+     *
+     * @param ids the ids to read; an id requested twice is read once.
+     * @param concurrency the maximum number of reads running at a time.
+     * @param timeout the time after which the result is returned with the persons read so far.
+     * @param unit the unit of the timeout.
+     * @return the persons found, in the order of the ids, and the missing and unresolved ids.
+     */
+    public MultiGetResult selectByIds(Collection<UUID> ids, int concurrency, long timeout, TimeUnit unit) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1, got " + concurrency);
         }
+        return metrics.timeCall("selectByIds", () -> {
+            long start = System.nanoTime();
+            long timeoutNanos = unit.toNanos(timeout);
+            Semaphore window = new Semaphore(concurrency);
+            Map<UUID, CompletableFuture<Person>> reads = new LinkedHashMap<>();
+            try {
+                for (UUID id : ids) {
+                    if (reads.containsKey(id)) {
+                        continue;
+                    }
+                    if (!window.tryAcquire(Math.max(0, timeoutNanos - (System.nanoTime() - start)), TimeUnit.NANOSECONDS)) {
+                        break;
+                    }
+                    CompletableFuture<Person> read;
+                    try {
+                        read = executor.executeAsync(bindRead(SELECT_BY_ID, id)).thenApply(rs -> {
+                            Row r = rs.one();
+                            return r == null ? null : personMapper.map(r);
+                        });
+                    } catch (RuntimeException e) {
+                        read = new CompletableFuture<>();
+                        read.completeExceptionally(e);
+                    }
+                    read.whenComplete((person, error) -> window.release());
+                    reads.put(id, read);
+                }
+                CompletableFuture.allOf(reads.values().toArray(new CompletableFuture[0]))
+                        .get(Math.max(0, timeoutNanos - (System.nanoTime() - start)), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                // Reported per id below.
+            }
+
+            List<Person> persons = new ArrayList<>();
+            List<UUID> missingIds = new ArrayList<>();
+            List<UUID> unresolvedIds = new ArrayList<>();
+            Throwable failure = null;
+            for (UUID id : new LinkedHashSet<>(ids)) {
+                CompletableFuture<Person> read = reads.get(id);
+                if (read == null || !read.isDone()) {
+                    unresolvedIds.add(id);
+                } else if (read.isCompletedExceptionally()) {
+                    unresolvedIds.add(id);
+                    failure = read.handle((person, error) -> error).join();
+                } else if (read.join() == null) {
+                    missingIds.add(id);
+                } else {
+                    persons.add(read.join());
+                }
+            }
+            if (failure != null) {
+                LOG.warn("Failed to read some of the " + reads.size() + " persons of a multi-get", failure);
+            }
+            return new MultiGetResult(persons, missingIds, unresolvedIds, System.nanoTime() - start);
+        });
+    }
+
+    /**
+     * Select the persons with the email from the personByEmail table, reading a single partition.
+     *
+     * @return every person with that email, empty if there is none.
+     * @throws IllegalStateException if the repository does not maintain the email index.
+     */
+    public List<Person> selectByEmail(String email) {
+        checkEmailIndex();
+        return metrics.timeCall("selectByEmail", () -> {
+            List<Person> persons = new ArrayList<Person>();
+            for (Row r : executor.execute(bindRead(SELECT_BY_EMAIL, email))) {
+                persons.add(personByEmailMapper.map(r));
+            }
+            return persons;
+        });
+    }
+
+    /**
+     * Asynchronously select the persons with the email from the personByEmail table.
+     *
+     * @return a future completed with every person with that email.
+     * @throws IllegalStateException if the repository does not maintain the email index.
+     */
+    public CompletableFuture<List<Person>> selectByEmailAsync(String email) {
+        checkEmailIndex();
+        return metrics.timeAsync("selectByEmailAsync", () -> collectAsync(executor.executeAsync(bindRead(SELECT_BY_EMAIL, email)), personByEmailMapper::map));
+    }
+
+    /**
+     * Select persons by age.
+     *
+     * When the repository uses age buckets, the buckets are queried in parallel.
+     *
+     * @return every person of that age, empty if there is none.
+     */
+    public List<Person> selectByAge(int age) {
+        return metrics.timeCall("selectByAge", () -> {
+            if (!isBucketed()) {
+                ResultSet rs = executor.execute(bindRead(SELECT_BY_AGE, age));
+
+                List<Person> persons = new ArrayList<Person>();
+
+                for (Row r : rs) {
+                    persons.add(personByAgeMapper.map(r));
+                }
+                return persons;
+            }
+            return await(selectByAgeRangeInParallel(age, age));
+        });
+    }
+
+    /**
+     * Asynchronously select persons by age.
+     *
+     * @return a future completed with every person of that age.
+     */
+    public CompletableFuture<List<Person>> selectByAgeAsync(int age) {
+        return metrics.timeAsync("selectByAgeAsync", () -> selectByAgeRangeInParallel(age, age));
+    }
+
+    /**
+     * Select the persons whose age is between min and max, both included.
+     *
+     * Every age (and every bucket of it) is a separate partition; all of them are queried in parallel and the
+     * results merged.
+     *
+     * @return the persons, ordered by age.
+     * @throws IllegalArgumentException if min is greater than max, or the range spans more than
+     *         {@link #MAX_AGE_RANGE} ages.
+     */
+    public List<Person> selectByAgeRange(int min, int max) {
+        return metrics.timeCall("selectByAgeRange", () -> await(selectByAgeRangeInParallel(min, max)));
+    }
 
-        return persons.get(0);
+    /**
+     * Asynchronously select the persons whose age is between min and max, both included.
+     *
+     * @return a future completed with the persons, ordered by age.
+     */
+    public CompletableFuture<List<Person>> selectByAgeRangeAsync(int min, int max) {
+        return metrics.timeAsync("selectByAgeRangeAsync", () -> selectByAgeRangeInParallel(min, max));
+    }
+
+    private CompletableFuture<List<Person>> selectByAgeRangeInParallel(int min, int max) {
+        if (min > max) {
+            throw new IllegalArgumentException("min must not be greater than max");
+        }
+        if ((long) max - min >= MAX_AGE_RANGE) {
+            throw new IllegalArgumentException("The age range must not span more than " + MAX_AGE_RANGE + " ages");
+        }
+        List<CompletableFuture<List<Person>>> partitions = new ArrayList<>();
+        // A long counter, so that the loop ends when max is Integer.MAX_VALUE.
+        for (long age = min; age <= max; age++) {
+            for (int bucket = 0; bucket < ageBuckets; bucket++) {
+                BoundStatement select = isBucketed()
+                        ? bindRead(SELECT_BY_AGE_BUCKET, (int) age, bucket)
+                        : bindRead(SELECT_BY_AGE, (int) age);
+                partitions.add(collectAsync(executor.executeAsync(select), personByAgeMapper::map));
+            }
+        }
+        return CompletableFuture.allOf(partitions.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<Person> persons = new ArrayList<Person>();
+            for (CompletableFuture<List<Person>> partition : partitions) {
+                persons.addAll(partition.join());
+            }
+            return persons;
+        });
     }
 
     /**
@@ -173,18 +654,62 @@ public class PersonRepository {
      * @return
      */
     public List<Person> selectAll() {
-        StringBuilder sb = new StringBuilder("SELECT * FROM ").append(TABLE_NAME);
+        return metrics.timeCall("selectAll", () -> {
+            ResultSet rs = executor.execute(bindRead(SELECT_ALL));
 
-        final String query = sb.toString();
-        ResultSet rs = session.execute(query);
+            List<Person> persons = new ArrayList<Person>();
 
-        List<Person> persons = new ArrayList<Person>();
+            for (Row r : rs) {
+                persons.add(personMapper.map(r));
+            }
+            return persons;
+        });
+    }
 
-        for (Row r : rs) {
-            Person person = new Person(r.getUUID("id"), r.getString("firstname"), r.getString("lastname"), r.getInt("age"), r.getString("email"));
-            persons.add(person);
-        }
-        return persons;
+    /**
+     * Select all persons from persons into a columnar batch, appending each row to primitive and dictionary encoded
+     * columns instead of creating a person for it.
+     *
+     * @param fetchSize the number of rows per page.
+     * @param offHeap whether the codes of the text columns are kept in direct memory.
+     * @return every person, by column.
+     */
+    public PersonBatch selectAllBatch(int fetchSize, boolean offHeap) {
+        return metrics.timeCall("selectAllBatch", () -> {
+            BoundStatement statement = bindRead(SELECT_ALL);
+            statement.setFetchSize(fetchSize);
+            PersonBatch.Builder batch = PersonBatch.builder(offHeap);
+            for (Row r : executor.execute(statement)) {
+                personMapper.append(r, batch);
+            }
+            return batch.build();
+        });
+    }
+
+    /**
+     * Select all persons from persons, reading only the columns of the fields.
+     *
+     * @param fields the fields to fill, the others are left to {@code null} (or 0).
+     * @return every person.
+     */
+    public List<Person> selectAll(Set<PersonField> fields) {
+        Projection projection = projection(fields);
+        return metrics.timeCall("selectAllProjected", () -> {
+            List<Person> persons = new ArrayList<Person>();
+            for (Row r : executor.execute(bindRead(projection.selectAll))) {
+                persons.add(projection.mapper.map(r));
+            }
+            return persons;
+        });
+    }
+
+    /**
+     * Asynchronously select all persons from persons, fetching the pages without blocking.
+     *
+     * @return a future completed with every person.
+     */
+    public CompletableFuture<List<Person>> selectAllAsync() {
+        return metrics.timeAsync("selectAllAsync", () -> collectAsync(executor.executeAsync(bindRead(SELECT_ALL)), personMapper::map));
     }
 
     /**
@@ -192,28 +717,179 @@ public class PersonRepository {
      * @return
      */
     public List<Person> selectAllPersonByAge() {
-        StringBuilder sb = new StringBuilder("SELECT * FROM ").append(TABLE_NAME_BY_AGE);
+        return metrics.timeCall("selectAllPersonByAge", () -> {
+            ResultSet rs = executor.execute(bindRead(SELECT_ALL_BY_AGE));
 
-        final String query = sb.toString();
-        ResultSet rs = session.execute(query);
+            List<Person> persons = new ArrayList<Person>();
 
-        List<Person> persons = new ArrayList<Person>();
+            for (Row r : rs) {
+                persons.add(personByAgeMapper.map(r));
+            }
+            return persons;
+        });
+    }
 
-        for (Row r : rs) {
-            Person person = new Person(r.getUUID("id"), null, null, r.getInt("age"), null);
-            persons.add(person);
-        }
-        return persons;
+    /**
+     * Asynchronously select all persons from personsByAge, fetching the pages without blocking.
+     *
+     * @return a future completed with every person of the table.
+     */
+    public CompletableFuture<List<Person>> selectAllPersonByAgeAsync() {
+        return metrics.timeAsync("selectAllPersonByAgeAsync", () -> collectAsync(executor.executeAsync(bindRead(SELECT_ALL_BY_AGE)), personByAgeMapper::map));
+    }
+
+    /**
+     * Stream all persons from persons, fetching the pages lazily.
+     *
+     * At most two pages are held in memory: the next page is requested in the background once half of the
+     * current one has been consumed.
+     *
+     * @param fetchSize the number of rows per page.
+     * @return a sequential stream of every person.
+     */
+    public Stream<Person> streamAll(int fetchSize) {
+        return metrics.timeCall("streamAll", () -> stream(bindRead(SELECT_ALL), fetchSize, personMapper::map));
+    }
+
+    /**
+     * Stream all persons from persons, reading only the columns of the fields and fetching the pages lazily.
+     *
+     * Meant for exports needing a few columns: the other columns are neither transferred nor decoded.
+     *
+     * @param fetchSize the number of rows per page.
+     * @param fields the fields to fill, the others are left to {@code null} (or 0).
+     * @return a sequential stream of every person.
+     */
+    public Stream<Person> streamAll(int fetchSize, Set<PersonField> fields) {
+        Projection projection = projection(fields);
+        return metrics.timeCall("streamAllProjected", () -> stream(bindRead(projection.selectAll), fetchSize, projection.mapper::map));
+    }
+
+    /**
+     * Stream all persons from personsByAge, fetching the pages lazily.
+     *
+     * @param fetchSize the number of rows per page.
+     * @return a sequential stream of every person of the table.
+     */
+    public Stream<Person> streamAllPersonByAge(int fetchSize) {
+        return metrics.timeCall("streamAllPersonByAge", () -> stream(bindRead(SELECT_ALL_BY_AGE), fetchSize, personByAgeMapper::map));
+    }
+
+    /**
+     * Publish all persons from persons, fetching the next page only when the subscriber requests more persons.
+     *
+     * @param fetchSize the number of rows per page, the most a subscription holds at a time.
+     * @return a publisher starting a new scan for each subscriber.
+     */
+    public PersonPublisher publishAll(int fetchSize) {
+        return new PersonPublisher(executor, () -> bindRead(SELECT_ALL), fetchSize, personMapper::map);
+    }
+
+    /**
+     * Publish all persons from personsByAge, fetching the next page only when the subscriber requests more persons.
+     *
+     * @param fetchSize the number of rows per page, the most a subscription holds at a time.
+     * @return a publisher starting a new scan for each subscriber.
+     */
+    public PersonPublisher publishAllPersonByAge(int fetchSize) {
+        return new PersonPublisher(executor, () -> bindRead(SELECT_ALL_BY_AGE), fetchSize, personByAgeMapper::map);
+    }
+
+    /**
+     * Read all persons from persons, mapping every row into the same person instance.
+     *
+     * Nothing is allocated per row, so this is the cheapest way to go through the whole table. The person given to
+     * the consumer is overwritten by the next row; it must be copied if kept.
+     *
+     * @param fetchSize the number of rows per page.
+     * @param consumer receives the reused person once per row.
+     */
+    public void scanAll(int fetchSize, Consumer<Person> consumer) {
+        metrics.time("scanAll", () -> {
+            BoundStatement statement = bindRead(SELECT_ALL);
+            statement.setFetchSize(fetchSize);
+            personMapper.forEach(executor.execute(statement), consumer);
+        });
+    }
+
+    /**
+     * Select one page of persons from persons.
+     *
+     * @param fetchSize the number of rows per page.
+     * @param pagingState the paging state returned with the previous page, or {@code null} for the first page.
+     * @return the page, with the paging state of the next one.
+     */
+    public PersonPage selectAllPage(int fetchSize, PagingState pagingState) {
+        return metrics.timeCall("selectAllPage", () -> page(bindRead(SELECT_ALL), fetchSize, pagingState, personMapper::map));
+    }
+
+    /**
+     * Select one page of persons from personsByAge.
+     *
+     * @param fetchSize the number of rows per page.
+     * @param pagingState the paging state returned with the previous page, or {@code null} for the first page.
+     * @return the page, with the paging state of the next one.
+     */
+    public PersonPage selectAllPersonByAgePage(int fetchSize, PagingState pagingState) {
+        return metrics.timeCall("selectAllPersonByAgePage", () -> page(bindRead(SELECT_ALL_BY_AGE), fetchSize, pagingState, personByAgeMapper::map));
+    }
+
+    /**
+     * Delete a person from persons, with its personByAge row and, with the email index, its personByEmail row.
+     *
+     * The person is read first to find these rows, then all of them are deleted with a logged batch.
+     *
+     * @return whether there was a person with that id.
+     */
+    public boolean deletePerson(UUID id) {
+        return metrics.timeCall("deletePerson", () -> {
+            Row r = executor.execute(bindRead(SELECT_BY_ID, id)).one();
+            if (r == null) {
+                return false;
+            }
+            Person person = personMapper.map(r);
+            BatchStatement batch = new BatchStatement(BatchStatement.Type.LOGGED)
+                    .add(statements.bind(DELETE_PERSON, id))
+                    .add(bindDeletePersonByAge(person));
+            if (emailIndex && person.getEmail() != null) {
+                batch.add(statements.bind(DELETE_PERSON_BY_EMAIL, person.getEmail(), id));
+            }
+            executor.execute(batch);
+            return true;
+        });
     }
 
     /**
      * Delete a person by title.
      */
     public void deletePersonByAge(int age) {
-        StringBuilder sb = new StringBuilder("DELETE FROM ").append(TABLE_NAME_BY_AGE).append(" WHERE age = ").append(age).append(";");
+        metrics.time("deletePersonByAge", () -> {
+            if (!isBucketed()) {
+                executor.execute(statements.bind(DELETE_BY_AGE, age));
+            } else {
+                await(deletePersonByAgeInParallel(age));
+            }
+        });
+    }
 
-        final String query = sb.toString();
-        session.execute(query);
+    /**
+     * Asynchronously delete the persons of the given age from personsByAge.
+     *
+     * @return a future completed once the partition is deleted.
+     */
+    public CompletableFuture<Void> deletePersonByAgeAsync(int age) {
+        return metrics.timeAsync("deletePersonByAgeAsync", () -> deletePersonByAgeInParallel(age));
+    }
+
+    private CompletableFuture<Void> deletePersonByAgeInParallel(int age) {
+        if (!isBucketed()) {
+            return executor.executeAsync(statements.bind(DELETE_BY_AGE, age)).thenApply(rs -> null);
+        }
+        List<CompletableFuture<ResultSet>> deletes = new ArrayList<>();
+        for (int bucket = 0; bucket < ageBuckets; bucket++) {
+            deletes.add(executor.executeAsync(statements.bind(DELETE_BY_AGE_BUCKET, age, bucket)));
+        }
+        return CompletableFuture.allOf(deletes.toArray(new CompletableFuture[0]));
     }
 
     /**
@@ -225,6 +901,313 @@ public class PersonRepository {
         StringBuilder sb = new StringBuilder("DROP TABLE IF EXISTS ").append(tableName);
 
         final String query = sb.toString();
-        session.execute(query);
+        metrics.time("deleteTable", () -> executeSchemaChange(query));
+    }
+
+    /**
+     * Runs a schema change directly on the session, outside of the limits of the executor, but traced like any
+     * statement.
+     */
+    private void executeSchemaChange(String query) {
+        executor.getTracer().execute(session, new SimpleStatement(query));
+    }
+
+    Session getSession() {
+        return session;
+    }
+
+    StatementExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Binds a read, marked idempotent so that the driver may run it speculatively on another replica.
+     */
+    private BoundStatement bindRead(String query, Object... values) {
+        BoundStatement statement = statements.bind(query, values);
+        statement.setIdempotent(true);
+        return statement;
+    }
+
+    BoundStatement bindInsertPerson(Person person) {
+        return statements.bind(INSERT_PERSON, person.getId(), person.getFirstName(), person.getLastName(), person.getEmail(), person.getAge());
+    }
+
+    BoundStatement bindInsertPersonByEmail(Person person) {
+        return statements.bind(INSERT_PERSON_BY_EMAIL, person.getEmail(), person.getId(), person.getFirstName(), person.getLastName(), person.getAge());
+    }
+
+    boolean isEmailIndexed() {
+        return emailIndex;
+    }
+
+    BoundStatement bindInsertPersonByAge(Person person) {
+        if (isBucketed()) {
+            return statements.bind(INSERT_PERSON_BY_AGE_BUCKET, person.getAge(), ageBucket(person.getId()), person.getId());
+        }
+        return statements.bind(INSERT_PERSON_BY_AGE, person.getAge(), person.getId());
+    }
+
+    /**
+     * @return the bucket of the personByAge partition holding this id, always 0 without buckets.
+     */
+    int ageBucket(UUID id) {
+        return ageBucket(id, ageBuckets);
+    }
+
+    static int ageBucket(UUID id, int ageBuckets) {
+        return Math.floorMod(id.hashCode(), ageBuckets);
+    }
+
+    private boolean isBucketed() {
+        return ageBuckets > 1;
+    }
+
+    private BoundStatement bindSelectPersonByAge(Person person) {
+        if (isBucketed()) {
+            return bindRead(SELECT_PERSON_BY_AGE_BUCKET, person.getAge(), ageBucket(person.getId()), person.getId());
+        }
+        return bindRead(SELECT_PERSON_BY_AGE, person.getAge(), person.getId());
+    }
+
+    private BoundStatement bindDeletePersonByAge(Person person) {
+        if (isBucketed()) {
+            return statements.bind(DELETE_PERSON_BY_AGE_BUCKET, person.getAge(), ageBucket(person.getId()), person.getId());
+        }
+        return statements.bind(DELETE_PERSON_BY_AGE, person.getAge(), person.getId());
+    }
+
+    /**
+     * @return the queries and the mapper of the projection, created on its first use.
+     */
+    private Projection projection(Set<PersonField> fields) {
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("A projection needs at least one field");
+        }
+        return projections.computeIfAbsent(EnumSet.copyOf(fields), Projection::new);
+    }
+
+    private void checkEmailIndex() {
+        if (!emailIndex) {
+            throw new IllegalStateException("The repository does not maintain the email index");
+        }
+    }
+
+    private void checkDualWrites() {
+        if (retryLog == null) {
+            throw new IllegalStateException("The repository does not use dual writes");
+        }
+    }
+
+    /**
+     * Runs both inserts of a person concurrently, with the same client timestamp; the one that fails is appended to
+     * the retry log with that timestamp.
+     */
+    private CompletableFuture<Void> insertPersonDualWrite(Person person) {
+        long timestamp = clientTimestamp();
+        return CompletableFuture.allOf(
+                writeOrLog(PersonRetryLog.Target.PERSON, person, bindInsertPerson(person), timestamp),
+                writeOrLog(PersonRetryLog.Target.PERSON_BY_AGE, person, bindInsertPersonByAge(person), timestamp));
+    }
+
+    /**
+     * @return a write timestamp, in microseconds, from the timestamp generator of the cluster.
+     */
+    private long clientTimestamp() {
+        long timestamp = session.getCluster().getConfiguration().getPolicies().getTimestampGenerator().next();
+        if (timestamp == Long.MIN_VALUE) {
+            // The generator leaves the timestamp to the coordinator, whose clock is the wall clock too.
+            timestamp = System.currentTimeMillis() * 1000;
+        }
+        return timestamp;
+    }
+
+    /**
+     * Checks every row of the statement, page by page, and runs the repairs the checks complete with. The checks and
+     * the repairs of a page are awaited before the next page is fetched. The repairs are bound and sent from the
+     * calling thread, never from a driver thread, as binding may wait for the statement to be prepared and sending for
+     * an in-flight slot.
+     *
+     * @param check returns a future completed with the repair of the row, or with {@code null} if it is consistent.
+     * @return the number of rows checked.
+     */
+    private long forEachPage(BoundStatement statement, Function<Row, CompletableFuture<Supplier<Statement>>> check) {
+        statement.setFetchSize(RECONCILE_FETCH_SIZE);
+        ResultSet rs = executor.execute(statement);
+        long rows = 0;
+        while (true) {
+            int available = rs.getAvailableWithoutFetching();
+            List<CompletableFuture<Supplier<Statement>>> checks = new ArrayList<>(available);
+            for (; available > 0; available--) {
+                checks.add(check.apply(rs.one()));
+            }
+            rows += checks.size();
+            List<CompletableFuture<ResultSet>> repairs = new ArrayList<>();
+            for (CompletableFuture<Supplier<Statement>> checked : checks) {
+                Supplier<Statement> repair = await(checked);
+                if (repair != null) {
+                    repairs.add(executor.executeAsync(repair.get()));
+                }
+            }
+            await(CompletableFuture.allOf(repairs.toArray(new CompletableFuture[0])));
+            if (rs.isFullyFetched()) {
+                return rows;
+            }
+            await(executor.fetchMoreResults(rs));
+        }
+    }
+
+    private CompletableFuture<Void> writeOrLog(PersonRetryLog.Target target, Person person, BoundStatement insert, long timestamp) {
+        insert.setDefaultTimestamp(timestamp);
+        return executor.executeAsync(insert.setIdempotent(true))
+                .handle((rs, error) -> error)
+                .thenCompose(error -> {
+                    if (error == null) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    // Leave the driver thread: appending forces the log to disk.
+                    return CompletableFuture.runAsync(() -> {
+                        LOG.warn("Failed to insert person " + person.getId() + " into " + target + ", keeping it in the retry log", error);
+                        retryLog.append(target, person, timestamp);
+                    });
+                });
+    }
+
+    /**
+     * Waits for the future, rethrowing the driver exception it failed with.
+     */
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Binds the write of a person: its insert, with its personByAge row in a logged batch if asked.
+     *
+     * With the email index, the batch is always logged and also holds the personByEmail row, and the delete of the
+     * row of the previous email of the person when it changed; that email is read first.
+     */
+    private Statement bindWritePerson(Person person, boolean withPersonByAge) {
+        if (!emailIndex) {
+            return withPersonByAge ? bindInsertPersonBatch(person) : bindInsertPerson(person);
+        }
+        return bindWritePerson(person, withPersonByAge, executor.execute(bindRead(SELECT_EMAIL_BY_ID, person.getId())).one());
+    }
+
+    /**
+     * Binds the write of a person like {@link #bindWritePerson(Person, boolean)}, reading the previous email without
+     * blocking. The future completes outside the driver threads, so that the write may be started from it.
+     */
+    private CompletableFuture<Statement> bindWritePersonAsync(Person person, boolean withPersonByAge) {
+        if (!emailIndex) {
+            return CompletableFuture.completedFuture(withPersonByAge ? bindInsertPersonBatch(person) : bindInsertPerson(person));
+        }
+        return executor.executeAsync(bindRead(SELECT_EMAIL_BY_ID, person.getId()))
+                .thenApplyAsync(rs -> bindWritePerson(person, withPersonByAge, rs.one()));
+    }
+
+    private Statement bindWritePerson(Person person, boolean withPersonByAge, Row previous) {
+        BatchStatement batch = new BatchStatement(BatchStatement.Type.LOGGED).add(bindInsertPerson(person));
+        if (withPersonByAge) {
+            batch.add(bindInsertPersonByAge(person));
+        }
+        if (person.getEmail() != null) {
+            batch.add(bindInsertPersonByEmail(person));
+        }
+        String previousEmail = previous == null ? null : previous.getString(0);
+        if (previousEmail != null && !previousEmail.equals(person.getEmail())) {
+            batch.add(statements.bind(DELETE_PERSON_BY_EMAIL, previousEmail, person.getId()));
+        }
+        return batch;
+    }
+
+    private BatchStatement bindInsertPersonBatch(Person person) {
+        return new BatchStatement(BatchStatement.Type.LOGGED)
+                .add(bindInsertPerson(person))
+                .add(bindInsertPersonByAge(person));
+    }
+
+    /**
+     * Maps the rows of every page, requesting the next page only once the current one has been consumed.
+     */
+    private CompletableFuture<List<Person>> collectAsync(CompletableFuture<ResultSet> page, Function<Row, Person> mapper) {
+        return collectAsync(page, mapper, new ArrayList<Person>());
+    }
+
+    private CompletableFuture<List<Person>> collectAsync(CompletableFuture<ResultSet> page, Function<Row, Person> mapper, List<Person> persons) {
+        return page.thenCompose(rs -> {
+            for (int remaining = rs.getAvailableWithoutFetching(); remaining > 0; remaining--) {
+                persons.add(mapper.apply(rs.one()));
+            }
+            if (rs.isFullyFetched()) {
+                return CompletableFuture.completedFuture(persons);
+            }
+            return collectAsync(executor.fetchMoreResults(rs), mapper, persons);
+        });
+    }
+
+    private Stream<Person> stream(BoundStatement statement, int fetchSize, Function<Row, Person> mapper) {
+        statement.setFetchSize(fetchSize);
+        ResultSet rs = executor.execute(statement);
+        int prefetchThreshold = Math.max(1, fetchSize / 2);
+
+        Iterator<Person> persons = new Iterator<Person>() {
+            @Override
+            public boolean hasNext() {
+                return !rs.isExhausted();
+            }
+
+            @Override
+            public Person next() {
+                if (rs.getAvailableWithoutFetching() == prefetchThreshold && !rs.isFullyFetched()) {
+                    rs.fetchMoreResults();
+                }
+                Row row = rs.one();
+                if (row == null) {
+                    throw new NoSuchElementException();
+                }
+                return mapper.apply(row);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(persons, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private PersonPage page(BoundStatement statement, int fetchSize, PagingState pagingState, Function<Row, Person> mapper) {
+        statement.setFetchSize(fetchSize);
+        if (pagingState != null) {
+            statement.setPagingState(pagingState);
+        }
+        ResultSet rs = executor.execute(statement);
+
+        int available = rs.getAvailableWithoutFetching();
+        List<Person> persons = new ArrayList<Person>(available);
+        for (int remaining = available; remaining > 0; remaining--) {
+            persons.add(mapper.apply(rs.one()));
+        }
+        return new PersonPage(persons, rs.getExecutionInfo().getPagingState());
+    }
+
+    /**
+     * The reads of a projection. Their prepared statements are cached by the registry like the other queries, and
+     * the mapper resolves the indexes of the projected columns once.
+     */
+    private static class Projection {
+        private final String selectById;
+
+        private final String selectAll;
+
+        private final PersonRowMapper mapper = new PersonRowMapper();
+
+        private Projection(Set<PersonField> fields) {
+            String columns = PersonField.columns(fields);
+            this.selectById = "SELECT " + columns + " FROM " + TABLE_NAME + " WHERE id = ?;";
+            this.selectAll = "SELECT " + columns + " FROM " + TABLE_NAME + ";";
+        }
     }
 }
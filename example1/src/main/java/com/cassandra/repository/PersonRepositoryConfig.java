@@ -0,0 +1,182 @@
+package com.cassandra.repository;
+
+import java.nio.file.Path;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Settings of a {@link PersonRepository}.
+ *
+ * The settings changing the table layout must be the same for every repository using the same keyspace.
+ *
+ */
+public class PersonRepositoryConfig {
+
+    public static final int DEFAULT_AGE_BUCKETS = 1;
+
+    private final int maxInFlightRequests;
+
+    private final int ageBuckets;
+
+    private final MetricRegistry metricRegistry;
+
+    private final Path retryLog;
+
+    private final boolean emailIndex;
+
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    private final QueryTracer queryTracer;
+
+    private PersonRepositoryConfig(Builder builder) {
+        this.maxInFlightRequests = builder.maxInFlightRequests;
+        this.ageBuckets = builder.ageBuckets;
+        this.metricRegistry = builder.metricRegistry;
+        this.retryLog = builder.retryLog;
+        this.emailIndex = builder.emailIndex;
+        this.concurrencyLimiter = builder.concurrencyLimiter;
+        this.queryTracer = builder.queryTracer;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    public int getAgeBuckets() {
+        return ageBuckets;
+    }
+
+    public MetricRegistry getMetricRegistry() {
+        return metricRegistry;
+    }
+
+    /**
+     * @return the retry log of the dual writes, or {@code null} if persons are written with a logged batch.
+     */
+    public Path getRetryLog() {
+        return retryLog;
+    }
+
+    /**
+     * @return whether the writes of the repository maintain the personByEmail table.
+     */
+    public boolean isEmailIndexed() {
+        return emailIndex;
+    }
+
+    /**
+     * @return the limiter of the requests, or {@code null} if only the maximum of in-flight requests applies.
+     */
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    public QueryTracer getQueryTracer() {
+        return queryTracer;
+    }
+
+    public static class Builder {
+
+        private int maxInFlightRequests = StatementExecutor.DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+
+        private int ageBuckets = DEFAULT_AGE_BUCKETS;
+
+        private MetricRegistry metricRegistry;
+
+        private Path retryLog;
+
+        private boolean emailIndex;
+
+        private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+        private QueryTracer queryTracer = QueryTracer.disabled();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum number of asynchronous requests running at the same time.
+         */
+        public Builder withMaxInFlightRequests(int maxInFlightRequests) {
+            this.maxInFlightRequests = maxInFlightRequests;
+            return this;
+        }
+
+        /**
+         * Splits each age of the personByAge table into this many partitions, keyed by {@code (age, bucket)}.
+         * Persons are spread over the buckets by id, so a popular age no longer makes one large partition on a single
+         * replica set, but reading an age takes one query per bucket. With a single bucket the table is keyed by age
+         * alone.
+         */
+        public Builder withAgeBuckets(int ageBuckets) {
+            this.ageBuckets = ageBuckets;
+            return this;
+        }
+
+        /**
+         * Records the latency and the errors of every operation in the registry, see {@link RepositoryMetrics}.
+         * Nothing is recorded when unset.
+         */
+        public Builder withMetrics(MetricRegistry metricRegistry) {
+            this.metricRegistry = metricRegistry;
+            return this;
+        }
+
+        /**
+         * Writes a person to the persons and personByAge tables with two concurrent idempotent inserts instead of a
+         * logged batch, which saves the batchlog write. An insert that fails is appended to the retry log, a local
+         * file replayed when the next repository using it is created.
+         */
+        public Builder withDualWrites(Path retryLog) {
+            this.retryLog = retryLog;
+            return this;
+        }
+
+        /**
+         * Maintains the personByEmail table, keyed by email, on the writes and deletes of persons, so that persons are
+         * found by email with a single partition read. Writing a person then reads its previous email first, to
+         * remove the entry of an email it no longer has. Bulk loads insert the entries but remove none, and SSTable
+         * loads do not write the table.
+         */
+        public Builder withEmailIndex(boolean emailIndex) {
+            this.emailIndex = emailIndex;
+            return this;
+        }
+
+        /**
+         * Runs every request of the repository through the limiter, which adapts the number of requests in flight to
+         * the latency and the overload errors of the cluster. The maximum of in-flight asynchronous requests still
+         * applies on top of it.
+         */
+        public Builder withConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+            this.concurrencyLimiter = concurrencyLimiter;
+            return this;
+        }
+
+        /**
+         * Runs every statement of the repository, schema changes included, through the tracer, which traces a sample
+         * of them and logs the slow ones with their trace. Nothing is traced when unset.
+         */
+        public Builder withQueryTracer(QueryTracer queryTracer) {
+            this.queryTracer = queryTracer;
+            return this;
+        }
+
+        public PersonRepositoryConfig build() {
+            if (maxInFlightRequests < 1) {
+                throw new IllegalStateException("maxInFlightRequests must be at least 1");
+            }
+            if (ageBuckets < 1) {
+                throw new IllegalStateException("ageBuckets must be at least 1");
+            }
+            if (emailIndex && retryLog != null) {
+                throw new IllegalStateException("The email index cannot be maintained with dual writes");
+            }
+            return new PersonRepositoryConfig(this);
+        }
+    }
+}
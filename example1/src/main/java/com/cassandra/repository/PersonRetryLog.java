@@ -0,0 +1,287 @@
+package com.cassandra.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cassandra.domain.Person;
+
+/**
+ * Append-only local file of the person writes that failed and must be written again.
+ *
+ * Every record is forced to disk before {@link #append(Target, Person, long)} returns. A record is written as its
+ * length, the CRC32 of its content, then its content; the file is read up to the first record that is cut short or
+ * does not match its checksum. Opening the log truncates the file back to its last valid record, so that a record
+ * torn by a crash is not followed by new ones. The log is rewritten into a temporary file moved over it, never in
+ * place.
+ *
+ * Each record keeps the client timestamp, in microseconds, of the failed write, so that the replayed write carries it
+ * and cannot overwrite a newer write of the same person.
+ *
+ */
+class PersonRetryLog {
+    private static final Logger LOG = LoggerFactory.getLogger(PersonRetryLog.class);
+
+    /**
+     * The maximum size of the content of a record: three strings of at most 65535 bytes and the fixed fields.
+     */
+    private static final int MAX_RECORD_SIZE = 1 << 18;
+
+    /**
+     * The table a logged write goes to.
+     */
+    enum Target {
+        PERSON, PERSON_BY_AGE
+    }
+
+    private final Path path;
+
+    /**
+     * Held for a whole replay, so that two replays do not write the same entries; appends only wait for the monitor
+     * of the log, which a replay does not hold while writing to the cluster.
+     */
+    private final Object replayLock = new Object();
+
+    PersonRetryLog(Path path) {
+        this.path = path;
+        recover();
+    }
+
+    synchronized void append(Target target, Person person, long timestamp) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            ByteBuffer record = ByteBuffer.wrap(encode(target, person, timestamp));
+            try {
+                while (record.hasRemaining()) {
+                    channel.write(record, end + record.position());
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                // Do not leave a partial record for the next appends to follow.
+                channel.truncate(end);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to the retry log " + path, e);
+        }
+    }
+
+    /**
+     * Reads the logged writes and passes them to the writer; the writes it fails are kept in the log, the others
+     * removed. Writes appended during the replay are kept for the next one.
+     *
+     * @return the number of writes replayed successfully.
+     */
+    int replay(Writer writer) {
+        synchronized (replayLock) {
+            List<Entry> entries;
+            synchronized (this) {
+                entries = read().entries;
+            }
+            List<Entry> failed = new ArrayList<>();
+            for (Entry entry : entries) {
+                try {
+                    writer.write(entry.target, entry.person, entry.timestamp);
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to replay the write of person " + entry.person.getId() + " to " + entry.target, e);
+                    failed.add(entry);
+                }
+            }
+            synchronized (this) {
+                List<Entry> current = read().entries;
+                List<Entry> remaining = new ArrayList<>(failed);
+                remaining.addAll(current.subList(Math.min(entries.size(), current.size()), current.size()));
+                rewrite(remaining);
+            }
+            return entries.size() - failed.size();
+        }
+    }
+
+    synchronized int size() {
+        return read().entries.size();
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    interface Writer {
+        /**
+         * @param timestamp the client timestamp of the original write, in microseconds.
+         */
+        void write(Target target, Person person, long timestamp);
+    }
+
+    /**
+     * Truncates the file after its last valid record.
+     */
+    private synchronized void recover() {
+        Records records = read();
+        try {
+            if (Files.exists(path) && Files.size(path) > records.validLength) {
+                LOG.warn("Truncating the retry log " + path + " after its last valid record, at " + records.validLength + " bytes");
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(records.validLength);
+                    channel.force(true);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to recover the retry log " + path, e);
+        }
+    }
+
+    private Records read() {
+        Records records = new Records();
+        if (!Files.exists(path)) {
+            return records;
+        }
+        try (InputStream file = Files.newInputStream(path); DataInputStream in = new DataInputStream(file)) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                try {
+                    int checksum = in.readInt();
+                    if (length < 1 || length > MAX_RECORD_SIZE) {
+                        throw new IOException("Invalid record length " + length);
+                    }
+                    byte[] content = new byte[length];
+                    in.readFully(content);
+                    if (checksum(content) != checksum) {
+                        throw new IOException("Checksum mismatch");
+                    }
+                    records.entries.add(decode(content));
+                    records.validLength += 8 + length;
+                } catch (IOException e) {
+                    LOG.warn("Ignoring the retry log " + path + " from byte " + records.validLength + ": " + e.getMessage());
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the retry log " + path, e);
+        }
+        return records;
+    }
+
+    private void rewrite(List<Entry> entries) {
+        try {
+            if (entries.isEmpty()) {
+                Files.deleteIfExists(path);
+                return;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (Entry entry : entries) {
+                bytes.write(encode(entry.target, entry.person, entry.timestamp));
+            }
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            // The log holds either all its former records or the rewritten ones, whenever a crash happens.
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to rewrite the retry log " + path, e);
+        }
+    }
+
+    private static byte[] encode(Target target, Person person, long timestamp) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(content);
+        out.writeByte(target.ordinal());
+        out.writeLong(timestamp);
+        out.writeLong(person.getId().getMostSignificantBits());
+        out.writeLong(person.getId().getLeastSignificantBits());
+        out.writeInt(person.getAge());
+        writeString(out, person.getFirstName());
+        writeString(out, person.getLastName());
+        writeString(out, person.getEmail());
+        out.flush();
+
+        byte[] bytes = content.toByteArray();
+        ByteArrayOutputStream record = new ByteArrayOutputStream(8 + bytes.length);
+        DataOutputStream header = new DataOutputStream(record);
+        header.writeInt(bytes.length);
+        header.writeInt(checksum(bytes));
+        header.write(bytes);
+        header.flush();
+        return record.toByteArray();
+    }
+
+    private static Entry decode(byte[] content) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+        int target = in.readByte();
+        if (target < 0 || target >= Target.values().length) {
+            throw new IOException("Invalid target " + target);
+        }
+        long timestamp = in.readLong();
+        UUID id = new UUID(in.readLong(), in.readLong());
+        int age = in.readInt();
+        Person person = new Person(id, readString(in), readString(in), age, readString(in));
+        return new Entry(Target.values()[target], person, timestamp);
+    }
+
+    private static int checksum(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        return (int) crc.getValue();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static class Entry {
+        private final Target target;
+
+        private final Person person;
+
+        private final long timestamp;
+
+        private Entry(Target target, Person person, long timestamp) {
+            this.target = target;
+            this.person = person;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * The valid records of the file and their length in bytes.
+     */
+    private static class Records {
+        private final List<Entry> entries = new ArrayList<>();
+
+        private long validLength;
+    }
+}
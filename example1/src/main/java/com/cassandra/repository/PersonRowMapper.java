@@ -0,0 +1,114 @@
+package com.cassandra.repository;
+
+import java.util.function.Consumer;
+
+import com.cassandra.domain.Person;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.Row;
+
+/**
+ * Maps rows of the person tables to {@link Person} objects.
+ *
+ * The index of each column is resolved once per {@link ColumnDefinitions} and the values are then decoded by index.
+ * Prepared statements share one ColumnDefinitions instance across all their executions and pages, so a mapper used
+ * for a single query resolves the names only once. Columns missing from the rows are left to {@code null} (or 0).
+ *
+ */
+public class PersonRowMapper {
+
+    private static final int ABSENT = -1;
+
+    private volatile Indexes indexes;
+
+    /**
+     * Maps the row to a new person.
+     */
+    public Person map(Row row) {
+        Indexes ix = indexes(row.getColumnDefinitions());
+        return new Person(
+                ix.id == ABSENT ? null : row.getUUID(ix.id),
+                ix.firstName == ABSENT ? null : row.getString(ix.firstName),
+                ix.lastName == ABSENT ? null : row.getString(ix.lastName),
+                ix.age == ABSENT ? 0 : row.getInt(ix.age),
+                ix.email == ABSENT ? null : row.getString(ix.email));
+    }
+
+    /**
+     * Maps the row into an existing person, overwriting every field.
+     *
+     * @param row the row to map.
+     * @param person the person to fill.
+     * @return the given person.
+     */
+    public Person map(Row row, Person person) {
+        Indexes ix = indexes(row.getColumnDefinitions());
+        person.setId(ix.id == ABSENT ? null : row.getUUID(ix.id));
+        person.setFirstName(ix.firstName == ABSENT ? null : row.getString(ix.firstName));
+        person.setLastName(ix.lastName == ABSENT ? null : row.getString(ix.lastName));
+        person.setAge(ix.age == ABSENT ? 0 : row.getInt(ix.age));
+        person.setEmail(ix.email == ABSENT ? null : row.getString(ix.email));
+        return person;
+    }
+
+    /**
+     * Maps every row into the same person instance and passes it to the consumer.
+     *
+     * The person is overwritten by the next row, so the consumer must copy what it keeps.
+     *
+     * @param rows the rows to map.
+     * @param consumer receives the reused person once per row.
+     */
+    public void forEach(Iterable<Row> rows, Consumer<Person> consumer) {
+        Person person = new Person(null, null, null, 0, null);
+        for (Row row : rows) {
+            consumer.accept(map(row, person));
+        }
+    }
+
+    /**
+     * Appends the row to the columns of a batch, without creating a person.
+     *
+     * @param row the row to map, which must hold the id.
+     * @param batch the batch to fill.
+     */
+    public void append(Row row, PersonBatch.Builder batch) {
+        Indexes ix = indexes(row.getColumnDefinitions());
+        batch.add(row.getUUID(ix.id),
+                ix.firstName == ABSENT ? null : row.getString(ix.firstName),
+                ix.lastName == ABSENT ? null : row.getString(ix.lastName),
+                ix.age == ABSENT ? 0 : row.getInt(ix.age),
+                ix.email == ABSENT ? null : row.getString(ix.email));
+    }
+
+    private Indexes indexes(ColumnDefinitions definitions) {
+        Indexes ix = indexes;
+        if (ix == null || ix.definitions != definitions) {
+            ix = new Indexes(definitions);
+            indexes = ix;
+        }
+        return ix;
+    }
+
+    private static class Indexes {
+        private final ColumnDefinitions definitions;
+
+        private final int id;
+
+        private final int firstName;
+
+        private final int lastName;
+
+        private final int age;
+
+        private final int email;
+
+        private Indexes(ColumnDefinitions definitions) {
+            this.definitions = definitions;
+            this.id = definitions.getIndexOf("id");
+            this.firstName = definitions.getIndexOf("firstname");
+            this.lastName = definitions.getIndexOf("lastname");
+            this.age = definitions.getIndexOf("age");
+            this.email = definitions.getIndexOf("email");
+        }
+    }
+}
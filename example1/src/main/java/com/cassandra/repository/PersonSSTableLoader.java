@@ -0,0 +1,181 @@
+package com.cassandra.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.cassandra.config.EncryptionOptions;
+import org.apache.cassandra.io.sstable.SSTableLoader;
+import org.apache.cassandra.streaming.SessionInfo;
+import org.apache.cassandra.streaming.StreamConnectionFactory;
+import org.apache.cassandra.streaming.StreamResultFuture;
+import org.apache.cassandra.streaming.StreamState;
+import org.apache.cassandra.streaming.StreamSummary;
+import org.apache.cassandra.tools.BulkLoadConnectionFactory;
+import org.apache.cassandra.utils.NativeSSTableLoaderClient;
+import org.apache.cassandra.utils.OutputHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.AuthProvider;
+
+/**
+ * Streams the SSTables written by {@link PersonSSTableWriter} to the nodes owning their rows.
+ *
+ * The token ranges and table definitions are read over the native protocol, then each SSTable is streamed over the
+ * storage port straight to its replicas, which add it to the table as is. All the table directories are streamed at
+ * the same time.
+ *
+ * Like the writer, it must not run in the JVM of a Cassandra node. {@link #main(String[])} writes a CSV file of
+ * persons and streams it in one go.
+ *
+ */
+public class PersonSSTableLoader {
+    private static final Logger LOG = LoggerFactory.getLogger(PersonSSTableLoader.class);
+
+    public static final int DEFAULT_NATIVE_PORT = 9042;
+
+    public static final int DEFAULT_STORAGE_PORT = 7000;
+
+    private final Collection<InetAddress> hosts;
+
+    private final int nativePort;
+
+    private final int storagePort;
+
+    public PersonSSTableLoader(Collection<InetAddress> hosts) {
+        this(hosts, DEFAULT_NATIVE_PORT, DEFAULT_STORAGE_PORT);
+    }
+
+    /**
+     * @param hosts the nodes used to discover the cluster.
+     * @param nativePort the port of the native protocol of the nodes.
+     * @param storagePort the port the nodes communicate with each other on.
+     */
+    public PersonSSTableLoader(Collection<InetAddress> hosts, int nativePort, int storagePort) {
+        if (hosts.isEmpty()) {
+            throw new IllegalArgumentException("At least one host is required");
+        }
+        this.hosts = Collections.unmodifiableList(new ArrayList<>(hosts));
+        this.nativePort = nativePort;
+        this.storagePort = storagePort;
+    }
+
+    /**
+     * Streams every {@code <writer>/<keyspace>/<table>} directory found under the output directory of a writer and
+     * waits for all of them.
+     *
+     * @param outputDirectory the output directory of a {@link PersonSSTableWriter}.
+     * @return the number of bytes streamed.
+     * @throws IllegalStateException if a directory could not be streamed to every replica.
+     */
+    public long load(Path outputDirectory) {
+        List<Path> tableDirectories = findTableDirectories(outputDirectory);
+        long start = System.nanoTime();
+
+        List<StreamResultFuture> streams = new ArrayList<>(tableDirectories.size());
+        List<SSTableLoader> loaders = new ArrayList<>(tableDirectories.size());
+        for (Path tableDirectory : tableDirectories) {
+            SSTableLoader loader = new SSTableLoader(tableDirectory.toFile(), new Client(), new OutputHandler.LogOutput());
+            loaders.add(loader);
+            streams.add(loader.stream());
+        }
+
+        long bytes = 0;
+        for (int i = 0; i < streams.size(); i++) {
+            Path tableDirectory = tableDirectories.get(i);
+            StreamState state;
+            try {
+                state = streams.get(i).get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Failed to stream " + tableDirectory, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while streaming " + tableDirectory, e);
+            }
+            if (state.hasFailedSession() || !loaders.get(i).getFailedHosts().isEmpty()) {
+                throw new IllegalStateException("Failed to stream " + tableDirectory + " to " + loaders.get(i).getFailedHosts());
+            }
+            for (SessionInfo session : state.sessions) {
+                for (StreamSummary summary : session.sendingSummaries) {
+                    bytes += summary.totalSize;
+                }
+            }
+        }
+        LOG.info("Streamed " + tableDirectories.size() + " table directories, " + bytes + " bytes in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return bytes;
+    }
+
+    private static List<Path> findTableDirectories(Path outputDirectory) {
+        try (Stream<Path> paths = Files.walk(outputDirectory, 3)) {
+            return paths.filter(Files::isDirectory)
+                    .filter(path -> outputDirectory.relativize(path).getNameCount() == 3)
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list " + outputDirectory, e);
+        }
+    }
+
+    /**
+     * Connects to the storage port of the cluster rather than the one of the local configuration.
+     */
+    private class Client extends NativeSSTableLoaderClient {
+
+        private Client() {
+            super(hosts, nativePort, AuthProvider.NONE, null);
+        }
+
+        @Override
+        public StreamConnectionFactory getConnectionFactory() {
+            return new BulkLoadConnectionFactory(storagePort, storagePort, new EncryptionOptions.ServerEncryptionOptions(), false);
+        }
+    }
+
+    /**
+     * Writes the SSTables of a CSV file of persons, then streams them to the cluster.
+     *
+     * Arguments: csvFile outputDirectory keyspace host nativePort storagePort [ageBuckets [parallelism [emailIndex]]].
+     */
+    public static void main(String[] args) throws UnknownHostException {
+        if (args.length < 6) {
+            System.err.println("Usage: PersonSSTableLoader csvFile outputDirectory keyspace host nativePort storagePort [ageBuckets [parallelism [emailIndex]]]");
+            System.exit(2);
+        }
+        int ageBuckets = args.length > 6 ? Integer.parseInt(args[6]) : PersonRepositoryConfig.DEFAULT_AGE_BUCKETS;
+        int parallelism = args.length > 7 ? Integer.parseInt(args[7]) : PersonSSTableWriter.DEFAULT_PARALLELISM;
+        boolean emailIndex = args.length > 8 && Boolean.parseBoolean(args[8]);
+        Path outputDirectory = Paths.get(args[1]);
+
+        int status = 0;
+        try {
+            PersonSSTableWriter writer = new PersonSSTableWriter(outputDirectory, args[2], ageBuckets, parallelism, PersonSSTableWriter.DEFAULT_BUFFER_SIZE_MB, emailIndex);
+            BulkLoadResult written = writer.write(Paths.get(args[0]));
+            if (written.getRowsFailed() > 0) {
+                LOG.error(written.getRowsFailed() + " rows could not be written, nothing streamed");
+                status = 1;
+            } else {
+                PersonSSTableLoader loader = new PersonSSTableLoader(Collections.singletonList(InetAddress.getByName(args[3])),
+                        Integer.parseInt(args[4]), Integer.parseInt(args[5]));
+                loader.load(outputDirectory);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Bulk load failed", e);
+            status = 1;
+        }
+        // The streaming threads are not daemon threads.
+        System.exit(status);
+    }
+}
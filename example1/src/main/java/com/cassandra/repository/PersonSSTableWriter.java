@@ -0,0 +1,311 @@
+package com.cassandra.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.io.sstable.CQLSSTableWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cassandra.domain.Person;
+
+/**
+ * Writes persons offline into SSTables of the person and personByAge tables, and of the personByEmail table for a
+ * repository maintaining the email index, to be streamed to the cluster by {@link PersonSSTableLoader}.
+ *
+ * Nothing goes through the CQL write path: rows are sorted in memory and flushed straight to SSTable files. The
+ * persons are spread over parallelism writers, each with its own output directory
+ * {@code <outputDirectory>/<writer>/<keyspace>/<table>}, which is the layout the loader expects.
+ *
+ * The SSTables use the schemas of {@link PersonRepository#createTable()} with the age column added, and of
+ * {@link PersonRepository#createTablePersonsByAge()} with the given number of age buckets, and of
+ * {@link PersonRepository#createTablePersonsByEmail()}. The cluster tables must have the same columns. Without the
+ * email index, no personByEmail rows are written: loading such SSTables into a cluster whose repositories maintain the
+ * index leaves the persons out of it.
+ *
+ * Opening a writer puts the JVM in Cassandra client mode: it must not run in the JVM of a Cassandra node.
+ *
+ */
+public class PersonSSTableWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(PersonSSTableWriter.class);
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    public static final int DEFAULT_BUFFER_SIZE_MB = 64;
+
+    private final Path outputDirectory;
+
+    private final String keyspace;
+
+    private final int ageBuckets;
+
+    private final int parallelism;
+
+    private final int bufferSizeMB;
+
+    private final boolean emailIndex;
+
+    public PersonSSTableWriter(Path outputDirectory, String keyspace) {
+        this(outputDirectory, keyspace, PersonRepositoryConfig.DEFAULT_AGE_BUCKETS, DEFAULT_PARALLELISM, DEFAULT_BUFFER_SIZE_MB);
+    }
+
+    /**
+     * @param outputDirectory the directory the SSTables are written under.
+     * @param keyspace the keyspace of the tables, as written unquoted in CQL.
+     * @param ageBuckets the number of age buckets of the personByAge table, 1 without buckets.
+     * @param parallelism the number of writers running at the same time.
+     * @param bufferSizeMB the rows each writer sorts in memory before flushing an SSTable, per table; a load uses up to
+     *        parallelism * 2 * bufferSizeMB of heap.
+     */
+    public PersonSSTableWriter(Path outputDirectory, String keyspace, int ageBuckets, int parallelism, int bufferSizeMB) {
+        this(outputDirectory, keyspace, ageBuckets, parallelism, bufferSizeMB, false);
+    }
+
+    /**
+     * @param outputDirectory the directory the SSTables are written under.
+     * @param keyspace the keyspace of the tables, as written unquoted in CQL.
+     * @param ageBuckets the number of age buckets of the personByAge table, 1 without buckets.
+     * @param parallelism the number of writers running at the same time.
+     * @param bufferSizeMB the rows each writer sorts in memory before flushing an SSTable, per table; a load uses up to
+     *        parallelism * 2 * bufferSizeMB of heap, parallelism * 3 * bufferSizeMB with the email index.
+     * @param emailIndex whether to write the personByEmail table too, as a repository with the email index does.
+     * @see PersonRepositoryConfig.Builder#withEmailIndex(boolean)
+     */
+    public PersonSSTableWriter(Path outputDirectory, String keyspace, int ageBuckets, int parallelism, int bufferSizeMB, boolean emailIndex) {
+        if (ageBuckets < 1 || parallelism < 1 || bufferSizeMB < 1) {
+            throw new IllegalArgumentException("ageBuckets, parallelism and bufferSizeMB must be at least 1");
+        }
+        this.outputDirectory = outputDirectory;
+        this.keyspace = keyspace.toLowerCase(Locale.ROOT);
+        this.ageBuckets = ageBuckets;
+        this.parallelism = parallelism;
+        this.bufferSizeMB = bufferSizeMB;
+        this.emailIndex = emailIndex;
+    }
+
+    /**
+     * Writes the persons of a comma separated file with one {@code id,firstname,lastname,email,age} line per person.
+     * Values cannot contain commas; empty values are written as null.
+     */
+    public BulkLoadResult write(Path csvFile) {
+        try (Stream<String> lines = Files.lines(csvFile)) {
+            return write(lines.filter(line -> !line.isEmpty()).map(PersonSSTableWriter::parse).iterator());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + csvFile, e);
+        }
+    }
+
+    /**
+     * Writes every person into the SSTables and waits for all writers to be flushed and closed.
+     *
+     * @param persons the persons to write, consumed only once.
+     * @return the number of written and failed rows and the throughput.
+     */
+    public BulkLoadResult write(Iterator<Person> persons) {
+        long start = System.nanoTime();
+        AtomicLong rowsWritten = new AtomicLong();
+        AtomicLong rowsFailed = new AtomicLong();
+        ConcurrentLinkedQueue<Person> failedPersons = new ConcurrentLinkedQueue<>();
+
+        List<Writers> writers = new ArrayList<>(parallelism);
+        ExecutorService threads = Executors.newFixedThreadPool(parallelism);
+        try {
+            // Building a writer registers its table in the global schema, which is not thread safe.
+            for (int i = 0; i < parallelism; i++) {
+                try {
+                    writers.add(new Writers(outputDirectory.resolve(String.valueOf(i)).resolve(keyspace)));
+                } catch (IOException | RuntimeException e) {
+                    closeAfterFailure(e, writers.toArray(new Writers[0]));
+                    throw e;
+                }
+            }
+            List<Future<?>> tasks = new ArrayList<>(parallelism);
+            for (Writers writer : writers) {
+                tasks.add(threads.submit(() -> {
+                    try (Writers w = writer) {
+                        Person person;
+                        while ((person = next(persons)) != null) {
+                            // Each row is counted once, as written or failed; the person is failed if any row is.
+                            boolean written = addRow(w.person, person, rowsWritten, rowsFailed,
+                                    person.getId(), person.getFirstName(), person.getLastName(), person.getEmail(), person.getAge());
+                            if (ageBuckets > 1) {
+                                written &= addRow(w.personByAge, person, rowsWritten, rowsFailed,
+                                        person.getAge(), PersonRepository.ageBucket(person.getId(), ageBuckets), person.getId());
+                            } else {
+                                written &= addRow(w.personByAge, person, rowsWritten, rowsFailed, person.getAge(), person.getId());
+                            }
+                            if (w.personByEmail != null && person.getEmail() != null) {
+                                written &= addRow(w.personByEmail, person, rowsWritten, rowsFailed,
+                                        person.getEmail(), person.getId(), person.getFirstName(), person.getLastName(), person.getAge());
+                            }
+                            if (!written) {
+                                failedPersons.add(person);
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create the SSTable writers in " + outputDirectory, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to write the SSTables in " + outputDirectory, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing the SSTables in " + outputDirectory, e);
+        } finally {
+            threads.shutdownNow();
+        }
+
+        BulkLoadResult result = new BulkLoadResult(rowsWritten.get(), rowsFailed.get(), System.nanoTime() - start, new ArrayList<>(failedPersons));
+        LOG.info("SSTables written in " + outputDirectory + ": " + result);
+        return result;
+    }
+
+    public Path getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    /**
+     * @return whether the row was added to the table.
+     */
+    private static boolean addRow(CQLSSTableWriter table, Person person, AtomicLong rowsWritten, AtomicLong rowsFailed, Object... values) {
+        try {
+            table.addRow(values);
+            rowsWritten.incrementAndGet();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to write person " + person.getId(), e);
+            rowsFailed.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Closes the writers built before a failure, adding their own failures to it as suppressed.
+     */
+    private static void closeAfterFailure(Throwable failure, AutoCloseable... writers) {
+        for (AutoCloseable writer : writers) {
+            if (writer == null) {
+                continue;
+            }
+            try {
+                writer.close();
+            } catch (Exception e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    private static Person next(Iterator<Person> persons) {
+        synchronized (persons) {
+            return persons.hasNext() ? persons.next() : null;
+        }
+    }
+
+    private static Person parse(String line) {
+        String[] values = line.split(",", -1);
+        if (values.length != 5) {
+            throw new IllegalArgumentException("Expected id,firstname,lastname,email,age but got: " + line);
+        }
+        return new Person(UUID.fromString(values[0]), emptyToNull(values[1]), emptyToNull(values[2]), Integer.parseInt(values[4]), emptyToNull(values[3]));
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * The person, personByAge and, with the email index, personByEmail writers of one keyspace directory.
+     */
+    private class Writers implements AutoCloseable {
+
+        private final CQLSSTableWriter person;
+
+        private final CQLSSTableWriter personByAge;
+
+        private final CQLSSTableWriter personByEmail;
+
+        private Writers(Path directory) throws IOException {
+            CQLSSTableWriter person = null;
+            CQLSSTableWriter personByAge = null;
+            CQLSSTableWriter personByEmail = null;
+            try {
+                String personTable = keyspace + "." + PersonRepository.TABLE_NAME;
+                person = build(directory.resolve(PersonRepository.TABLE_NAME),
+                        "CREATE TABLE " + personTable + " (id uuid PRIMARY KEY, firstname text, lastname text, email text, age int)",
+                        "INSERT INTO " + personTable + " (id, firstname, lastname, email, age) VALUES (?, ?, ?, ?, ?)");
+
+                String personByAgeTable = keyspace + "." + PersonRepository.TABLE_NAME_BY_AGE;
+                Path personByAgeDirectory = directory.resolve(PersonRepository.TABLE_NAME_BY_AGE.toLowerCase(Locale.ROOT));
+                if (ageBuckets > 1) {
+                    personByAge = build(personByAgeDirectory,
+                            "CREATE TABLE " + personByAgeTable + " (id uuid, age int, bucket int, PRIMARY KEY ((age, bucket), id))",
+                            "INSERT INTO " + personByAgeTable + " (age, bucket, id) VALUES (?, ?, ?)");
+                } else {
+                    personByAge = build(personByAgeDirectory,
+                            "CREATE TABLE " + personByAgeTable + " (id uuid, age int, PRIMARY KEY (age, id))",
+                            "INSERT INTO " + personByAgeTable + " (age, id) VALUES (?, ?)");
+                }
+
+                if (emailIndex) {
+                    String personByEmailTable = keyspace + "." + PersonRepository.TABLE_NAME_BY_EMAIL;
+                    personByEmail = build(directory.resolve(PersonRepository.TABLE_NAME_BY_EMAIL.toLowerCase(Locale.ROOT)),
+                            "CREATE TABLE " + personByEmailTable + " (email text, id uuid, firstname text, lastname text, age int, PRIMARY KEY (email, id))",
+                            "INSERT INTO " + personByEmailTable + " (email, id, firstname, lastname, age) VALUES (?, ?, ?, ?, ?)");
+                }
+            } catch (IOException | RuntimeException e) {
+                closeAfterFailure(e, person, personByAge);
+                throw e;
+            }
+            this.person = person;
+            this.personByAge = personByAge;
+            this.personByEmail = personByEmail;
+        }
+
+        private CQLSSTableWriter build(Path tableDirectory, String schema, String insert) throws IOException {
+            File directory = Files.createDirectories(tableDirectory).toFile();
+            return CQLSSTableWriter.builder()
+                    .inDirectory(directory)
+                    .forTable(schema)
+                    .using(insert)
+                    .withPartitioner(Murmur3Partitioner.instance)
+                    .withBufferSizeInMB(bufferSizeMB)
+                    .build();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                person.close();
+            } finally {
+                try {
+                    personByAge.close();
+                } finally {
+                    if (personByEmail != null) {
+                        personByEmail.close();
+                    }
+                }
+            }
+        }
+    }
+}
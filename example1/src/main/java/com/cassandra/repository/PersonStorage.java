@@ -0,0 +1,83 @@
+package com.cassandra.repository;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import com.cassandra.domain.Person;
+
+/**
+ * Storage of the person and personByAge tables.
+ *
+ * {@link PersonRepository} is the default implementation, on a Cassandra session. {@link OffHeapPersonStorage} keeps
+ * the tables in the memory of the JVM with the same semantics, for simulations and tests that need no cluster.
+ * Operations only Cassandra can provide (paging states, token range scans, bulk and SSTable loading, dual writes)
+ * stay on {@link PersonRepository}.
+ *
+ * Results are returned in the order Cassandra returns them: persons by token of their id, personByAge partitions by
+ * token of their key and the rows of a partition by id. Using a table that was not created, or was deleted, fails
+ * with an {@link com.datastax.driver.core.exceptions.InvalidQueryException}.
+ *
+ */
+public interface PersonStorage {
+
+    /**
+     * Creates the persons table if it does not exist.
+     */
+    void createTable();
+
+    /**
+     * Creates the personByAge table if it does not exist.
+     */
+    void createTablePersonsByAge();
+
+    /**
+     * Deletes the table and all its rows, if it exists.
+     */
+    void deleteTable(String tableName);
+
+    /**
+     * Inserts or replaces the person in the persons table.
+     */
+    void insertPerson(Person person);
+
+    CompletableFuture<Void> insertPersonAsync(Person person);
+
+    /**
+     * Inserts the age and id of the person in the personByAge table.
+     */
+    void insertPersonByAge(Person person);
+
+    /**
+     * Inserts the person in both tables atomically.
+     */
+    void insertPersonBatch(Person person);
+
+    /**
+     * @return the person, or {@code null} if there is none with that id.
+     */
+    Person selectById(UUID id);
+
+    CompletableFuture<Person> selectByIdAsync(UUID id);
+
+    /**
+     * @return the persons of the age in the personByAge table, with only their id and age set.
+     */
+    List<Person> selectByAge(int age);
+
+    CompletableFuture<List<Person>> selectByAgeAsync(int age);
+
+    /**
+     * @return the persons of the personByAge table whose age is between min and max inclusive, by age.
+     */
+    List<Person> selectByAgeRange(int min, int max);
+
+    List<Person> selectAll();
+
+    List<Person> selectAllPersonByAge();
+
+    /**
+     * Deletes every personByAge row of the age.
+     */
+    void deletePersonByAge(int age);
+}
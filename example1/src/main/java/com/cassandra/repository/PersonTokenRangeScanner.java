@@ -0,0 +1,203 @@
+package com.cassandra.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cassandra.domain.Person;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Token;
+import com.datastax.driver.core.TokenRange;
+import com.datastax.driver.core.exceptions.DriverException;
+
+/**
+ * Scans the whole person table in parallel, one token sub-range at a time.
+ *
+ * The ring is split into sub-ranges from the cluster token metadata so that every node takes part in the scan. Each
+ * sub-range is read by a worker of a bounded pool with {@code token(id) > ? AND token(id) <= ?}. When a read fails,
+ * it is retried from the last token already delivered, so no person is passed twice to the consumer.
+ *
+ * The range reads go through a {@link StatementExecutor}, the one of the repository when the scanner is created from
+ * it, so they share its concurrency limit, its query tracer and its metrics.
+ *
+ */
+public class PersonTokenRangeScanner {
+    private static final Logger LOG = LoggerFactory.getLogger(PersonTokenRangeScanner.class);
+
+    private static final String SELECT_RANGE = "SELECT token(id), id, firstname, lastname, email, age FROM " + PersonRepository.TABLE_NAME + " WHERE token(id) > ? AND token(id) <= ?;";
+
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    /**
+     * Receives the progress of a scan, from the worker threads.
+     */
+    public interface ProgressListener {
+        void onRangeCompleted(int completedRanges, int totalRanges, long rowsScanned);
+    }
+
+    private final StatementExecutor executor;
+
+    private final int splits;
+
+    private final int parallelism;
+
+    private final int fetchSize;
+
+    private final int maxRetries;
+
+    private final PersonRowMapper mapper = new PersonRowMapper();
+
+    public PersonTokenRangeScanner(Session session, int splits, int parallelism) {
+        this(session, splits, parallelism, DEFAULT_FETCH_SIZE, DEFAULT_MAX_RETRIES);
+    }
+
+    /**
+     * @param repository the repository whose executor runs the range reads.
+     * @param splits the minimum number of sub-ranges the ring is split into.
+     * @param parallelism the number of sub-ranges read at the same time.
+     */
+    public PersonTokenRangeScanner(PersonRepository repository, int splits, int parallelism) {
+        this(repository.getExecutor(), splits, parallelism, DEFAULT_FETCH_SIZE, DEFAULT_MAX_RETRIES);
+    }
+
+    /**
+     * @param session the session to scan with, logged into the keyspace of the person table.
+     * @param splits the minimum number of sub-ranges the ring is split into.
+     * @param parallelism the number of sub-ranges read at the same time.
+     * @param fetchSize the number of rows per page.
+     * @param maxRetries the number of times a failed sub-range is read again.
+     */
+    public PersonTokenRangeScanner(Session session, int splits, int parallelism, int fetchSize, int maxRetries) {
+        this(new StatementExecutor(session), splits, parallelism, fetchSize, maxRetries);
+    }
+
+    /**
+     * @param executor runs the range reads, on a session logged into the keyspace of the person table.
+     * @param splits the minimum number of sub-ranges the ring is split into.
+     * @param parallelism the number of sub-ranges read at the same time.
+     * @param fetchSize the number of rows per page.
+     * @param maxRetries the number of times a failed sub-range is read again.
+     */
+    public PersonTokenRangeScanner(StatementExecutor executor, int splits, int parallelism, int fetchSize, int maxRetries) {
+        if (splits < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("splits and parallelism must be at least 1");
+        }
+        this.executor = executor;
+        this.splits = splits;
+        this.parallelism = parallelism;
+        this.fetchSize = fetchSize;
+        this.maxRetries = maxRetries;
+    }
+
+    public ScanResult scan(Consumer<Person> consumer) {
+        return scan(consumer, (completed, total, rows) -> { });
+    }
+
+    /**
+     * Passes every person of the table to the consumer and waits for the scan to finish.
+     *
+     * @param consumer receives the persons, concurrently from several threads.
+     * @param listener notified each time a sub-range is completed.
+     * @return the number of scanned rows and the sub-ranges that could not be read.
+     */
+    public ScanResult scan(Consumer<Person> consumer, ProgressListener listener) {
+        long start = System.nanoTime();
+        List<TokenRange> ranges = split(executor.getSession().getCluster().getMetadata());
+
+        AtomicLong rowsScanned = new AtomicLong();
+        AtomicInteger completedRanges = new AtomicInteger();
+        List<TokenRange> failedRanges = Collections.synchronizedList(new ArrayList<TokenRange>());
+
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<?>> futures = new ArrayList<>(ranges.size());
+            for (TokenRange range : ranges) {
+                futures.add(workers.submit(() -> {
+                    TokenRange unread = scanRange(range, consumer, rowsScanned);
+                    if (unread != null) {
+                        failedRanges.add(unread);
+                    }
+                    listener.onRangeCompleted(completedRanges.incrementAndGet(), ranges.size(), rowsScanned.get());
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scanning " + PersonRepository.TABLE_NAME, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to scan " + PersonRepository.TABLE_NAME, e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+
+        ScanResult result = new ScanResult(rowsScanned.get(), ranges.size(), new ArrayList<>(failedRanges), System.nanoTime() - start);
+        LOG.info("Token range scan finished: " + result);
+        return result;
+    }
+
+    /**
+     * Splits each range of the ring so that there are at least {@code splits} non-wrapping sub-ranges.
+     */
+    private List<TokenRange> split(Metadata metadata) {
+        List<TokenRange> ringRanges = new ArrayList<>(metadata.getTokenRanges());
+        int splitsPerRange = (splits + ringRanges.size() - 1) / ringRanges.size();
+
+        List<TokenRange> ranges = new ArrayList<>();
+        for (TokenRange ringRange : ringRanges) {
+            for (TokenRange split : ringRange.splitEvenly(splitsPerRange)) {
+                ranges.addAll(split.unwrap());
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Reads one sub-range, resuming after the last delivered token on failure.
+     *
+     * @return the part of the range that could not be read, or {@code null} if it was read entirely.
+     */
+    private TokenRange scanRange(TokenRange range, Consumer<Person> consumer, AtomicLong rowsScanned) {
+        PreparedStatementRegistry statements = PreparedStatementRegistry.of(executor.getSession());
+        Token from = range.getStart();
+        int attempts = 0;
+        while (true) {
+            try {
+                ResultSet rs = executor.execute(statements.bind(SELECT_RANGE)
+                        .setToken(0, from)
+                        .setToken(1, range.getEnd())
+                        .setFetchSize(fetchSize)
+                        .setIdempotent(true));
+                for (Row r : rs) {
+                    consumer.accept(mapper.map(r));
+                    from = r.getToken(0);
+                    rowsScanned.incrementAndGet();
+                }
+                return null;
+            } catch (DriverException | RejectedExecutionException e) {
+                if (++attempts > maxRetries) {
+                    LOG.error("Giving up on token range (" + from + ", " + range.getEnd() + "] after " + attempts + " attempts", e);
+                    return executor.getSession().getCluster().getMetadata().newTokenRange(from, range.getEnd());
+                }
+                LOG.warn("Retrying token range (" + from + ", " + range.getEnd() + "], attempt " + attempts, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.cassandra.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+
+/**
+ * Per-session cache of prepared statements.
+ *
+ * Each CQL string is prepared once on the first use and the resulting {@link PreparedStatement} is reused for every
+ * later call, so the coordinator does not parse the query again and values are sent as typed bind variables.
+ * Statements are cached per logged keyspace because an unqualified table name resolves against it. The cache holds
+ * the futures of the prepare requests: concurrent first uses of a query wait for the same request, and a query that
+ * failed to prepare is dropped and prepared again on its next use.
+ *
+ */
+public class PreparedStatementRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(PreparedStatementRegistry.class);
+
+    // The cached statements reference their cluster, which references its sessions until they are closed: the weak
+    // key of a session is released once it is closed and unused, or once its cluster is unused.
+    private static final Map<Session, ConcurrentMap<String, CompletableFuture<PreparedStatement>>> STATEMENTS =
+            Collections.synchronizedMap(new WeakHashMap<Session, ConcurrentMap<String, CompletableFuture<PreparedStatement>>>());
+
+    private final Session session;
+
+    private final ConcurrentMap<String, CompletableFuture<PreparedStatement>> statements;
+
+    private PreparedStatementRegistry(Session session, ConcurrentMap<String, CompletableFuture<PreparedStatement>> statements) {
+        this.session = session;
+        this.statements = statements;
+    }
+
+    /**
+     * Returns the registry shared by every repository working on the given session.
+     *
+     * @param session the session the statements are prepared on.
+     * @return the registry of the session.
+     */
+    public static PreparedStatementRegistry of(Session session) {
+        return new PreparedStatementRegistry(session, STATEMENTS.computeIfAbsent(session, s -> new ConcurrentHashMap<>()));
+    }
+
+    /**
+     * Returns the prepared statement for the given query, preparing it on the first call.
+     *
+     * @param query the CQL query with bind markers.
+     * @return the cached prepared statement.
+     */
+    public PreparedStatement prepare(String query) {
+        try {
+            return prepareAsync(query).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Returns the prepared statement for the given query, sending the prepare request on the first call.
+     *
+     * @param query the CQL query with bind markers.
+     * @return a future completed with the cached prepared statement.
+     */
+    public CompletableFuture<PreparedStatement> prepareAsync(String query) {
+        String key = cacheKey(query);
+        CompletableFuture<PreparedStatement> prepared = statements.get(key);
+        if (prepared != null) {
+            return prepared;
+        }
+        // Only sends the request: the map is not locked while the statement is prepared.
+        CompletableFuture<PreparedStatement> created = statements.computeIfAbsent(key, k -> StatementExecutor.toCompletableFuture(session.prepareAsync(query)));
+        created.whenComplete((statement, error) -> {
+            if (error != null) {
+                statements.remove(key, created);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Prepares the queries not cached yet, all at the same time.
+     *
+     * @param queries the CQL queries with bind markers.
+     * @return a future completed with the number of queries prepared once all are done. A query failing to prepare,
+     *         e.g. because its table does not exist yet, is skipped and prepared again on its first use.
+     */
+    public CompletableFuture<Integer> prepareAllAsync(Collection<String> queries) {
+        List<CompletableFuture<Boolean>> prepares = new ArrayList<>(queries.size());
+        for (String query : queries) {
+            if (statements.containsKey(cacheKey(query))) {
+                continue;
+            }
+            prepares.add(prepareAsync(query).handle((statement, error) -> {
+                if (error != null) {
+                    LOG.warn("Failed to prepare " + query + ": " + error.getMessage());
+                    return false;
+                }
+                return true;
+            }));
+        }
+        return CompletableFuture.allOf(prepares.toArray(new CompletableFuture[0]))
+                .thenApply(v -> (int) prepares.stream().filter(CompletableFuture::join).count());
+    }
+
+    /**
+     * Prepares the given query if needed and binds the values to it.
+     *
+     * @param query the CQL query with bind markers.
+     * @param values the values to bind, in the order of the markers.
+     * @return a new bound statement.
+     */
+    public BoundStatement bind(String query, Object... values) {
+        return prepare(query).bind(values);
+    }
+
+    /**
+     * Drops every cached statement, e.g. after a table has been recreated with a different set of columns.
+     */
+    public void clear() {
+        statements.clear();
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    private String cacheKey(String query) {
+        String keyspace = session.getLoggedKeyspace();
+        return keyspace == null ? query : keyspace + '.' + query;
+    }
+}
@@ -0,0 +1,303 @@
+package com.cassandra.repository;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.QueryTrace;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+
+/**
+ * Executes statements with sampled query tracing and reports the slow ones.
+ *
+ * A share of the statements, the sample rate, is sent with tracing enabled, as are those already asking for it. A
+ * statement whose first page takes longer than the threshold is reported to the listener, by default a warning in the
+ * log, as a {@link SlowQuery}: with its trace when it was traced, so with the coordinator, the replicas and the time
+ * of each step. The trace is fetched, and the listener called, on a reporting thread of the tracer, so neither the
+ * caller nor the driver threads wait for it; it is only reported, not fetched, for fast statements. When too many
+ * reports are pending, the new ones are dropped and counted.
+ *
+ * Thread-safe. The listener is called from a single thread, the reporting thread, which stops when idle.
+ *
+ */
+public class QueryTracer {
+    private static final Logger LOG = LoggerFactory.getLogger(QueryTracer.class);
+
+    public static final long DEFAULT_SLOW_QUERY_THRESHOLD_MILLIS = 500;
+
+    /**
+     * The number of slow queries waiting to be reported beyond which new ones are dropped.
+     */
+    public static final int MAX_PENDING_REPORTS = 1024;
+
+    private static final long REPORTER_KEEP_ALIVE_SECONDS = 60;
+
+    private static final QueryTracer DISABLED = new QueryTracer(0, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+    private final double sampleRate;
+
+    private final long slowQueryThresholdNanos;
+
+    private final Consumer<SlowQuery> listener;
+
+    private final AtomicLong tracedQueries = new AtomicLong();
+
+    private final AtomicLong slowQueries = new AtomicLong();
+
+    private final AtomicLong droppedReports = new AtomicLong();
+
+    private final ThreadPoolExecutor reporter;
+
+    /**
+     * @param sampleRate the share of the statements to trace, from 0 to 1.
+     * @param slowQueryThreshold the latency above which a statement is logged.
+     * @param unit the unit of the threshold.
+     */
+    public QueryTracer(double sampleRate, long slowQueryThreshold, TimeUnit unit) {
+        this(sampleRate, slowQueryThreshold, unit, slowQuery -> LOG.warn(slowQuery.toString()));
+    }
+
+    /**
+     * @param sampleRate the share of the statements to trace, from 0 to 1.
+     * @param slowQueryThreshold the latency above which a statement is reported.
+     * @param unit the unit of the threshold.
+     * @param listener receives the slow statements.
+     */
+    public QueryTracer(double sampleRate, long slowQueryThreshold, TimeUnit unit, Consumer<SlowQuery> listener) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1, got " + sampleRate);
+        }
+        if (slowQueryThreshold < 0) {
+            throw new IllegalArgumentException("slowQueryThreshold must not be negative, got " + slowQueryThreshold);
+        }
+        this.sampleRate = sampleRate;
+        this.slowQueryThresholdNanos = unit.toNanos(slowQueryThreshold);
+        this.listener = listener;
+        this.reporter = new ThreadPoolExecutor(1, 1, REPORTER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING_REPORTS), r -> {
+                    Thread thread = new Thread(r, "query-tracer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.reporter.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return a tracer executing the statements as they are, tracing and reporting nothing.
+     */
+    public static QueryTracer disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Executes the statement and waits for its first page.
+     */
+    public ResultSet execute(Session session, Statement statement) {
+        if (this == DISABLED) {
+            return session.execute(statement);
+        }
+        boolean traced = sample(statement);
+        long start = System.nanoTime();
+        ResultSet rs;
+        try {
+            rs = session.execute(statement);
+        } catch (RuntimeException e) {
+            complete(statement, start, traced, null, e);
+            throw e;
+        }
+        complete(statement, start, traced, rs, null);
+        return rs;
+    }
+
+    /**
+     * Executes the statement asynchronously.
+     *
+     * @return a future completed with the first page of the result set.
+     */
+    public CompletableFuture<ResultSet> executeAsync(Session session, Statement statement) {
+        if (this == DISABLED) {
+            return StatementExecutor.toCompletableFuture(session.executeAsync(statement));
+        }
+        boolean traced = sample(statement);
+        long start = System.nanoTime();
+        CompletableFuture<ResultSet> future = StatementExecutor.toCompletableFuture(session.executeAsync(statement));
+        future.whenComplete((rs, error) -> complete(statement, start, traced, rs, error));
+        return future;
+    }
+
+    /**
+     * @return the number of statements sent with tracing enabled.
+     */
+    public long getTracedQueries() {
+        return tracedQueries.get();
+    }
+
+    /**
+     * @return the number of statements slower than the threshold.
+     */
+    public long getSlowQueries() {
+        return slowQueries.get();
+    }
+
+    /**
+     * @return the number of slow queries not reported because {@link #MAX_PENDING_REPORTS} were already waiting.
+     */
+    public long getDroppedReports() {
+        return droppedReports.get();
+    }
+
+    private boolean sample(Statement statement) {
+        if (!statement.isTracing() && sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            statement.enableTracing();
+        }
+        if (statement.isTracing()) {
+            tracedQueries.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private void complete(Statement statement, long start, boolean traced, ResultSet rs, Throwable error) {
+        long latency = System.nanoTime() - start;
+        if (latency <= slowQueryThresholdNanos) {
+            return;
+        }
+        slowQueries.incrementAndGet();
+        String query = describe(statement);
+        if (!traced || rs == null) {
+            report(() -> new SlowQuery(query, latency, null, error));
+            return;
+        }
+        QueryTrace trace = rs.getExecutionInfo().getQueryTrace();
+        report(() -> {
+            QueryTrace fetched = trace;
+            try {
+                // The getters of the trace fetch it from the system_traces tables, blocking until it is complete.
+                if (fetched != null) {
+                    fetched.getEvents();
+                }
+            } catch (RuntimeException e) {
+                LOG.debug("Failed to fetch the trace of a slow query", e);
+                fetched = null;
+            }
+            return new SlowQuery(query, latency, fetched, null);
+        });
+    }
+
+    /**
+     * Builds and reports the slow query on the reporting thread, never on the caller or driver threads.
+     */
+    private void report(Supplier<SlowQuery> slowQuery) {
+        try {
+            reporter.execute(() -> {
+                try {
+                    listener.accept(slowQuery.get());
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to report a slow query", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            droppedReports.incrementAndGet();
+        }
+    }
+
+    private static String describe(Statement statement) {
+        if (statement instanceof BoundStatement) {
+            return ((BoundStatement) statement).preparedStatement().getQueryString();
+        }
+        if (statement instanceof RegularStatement) {
+            return ((RegularStatement) statement).getQueryString();
+        }
+        if (statement instanceof BatchStatement) {
+            StringBuilder sb = new StringBuilder("BATCH");
+            for (Statement child : ((BatchStatement) statement).getStatements()) {
+                sb.append(' ').append(describe(child));
+            }
+            return sb.toString();
+        }
+        return statement.toString();
+    }
+
+    /**
+     * A statement slower than the threshold of the tracer.
+     */
+    public static class SlowQuery {
+
+        private final String query;
+
+        private final long latencyNanos;
+
+        private final QueryTrace trace;
+
+        private final Throwable error;
+
+        SlowQuery(String query, long latencyNanos, QueryTrace trace, Throwable error) {
+            this.query = query;
+            this.latencyNanos = latencyNanos;
+            this.trace = trace;
+            this.error = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        }
+
+        /**
+         * @return the CQL of the statement, of each of its statements for a batch.
+         */
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * @return the time until the first page was received, or the statement failed.
+         */
+        public long getLatency(TimeUnit unit) {
+            return unit.convert(latencyNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return the trace of the statement, or {@code null} if it was not traced or the trace could not be fetched.
+         */
+        public QueryTrace getTrace() {
+            return trace;
+        }
+
+        /**
+         * @return the error the statement failed with, {@code null} if it succeeded.
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("Slow query (")
+                    .append(TimeUnit.NANOSECONDS.toMillis(latencyNanos)).append(" ms")
+                    .append(error == null ? "" : ", failed with " + error)
+                    .append("): ").append(query);
+            if (trace != null) {
+                sb.append("\n  trace ").append(trace.getTraceId())
+                        .append(", coordinator ").append(trace.getCoordinator())
+                        .append(", ").append(trace.getDurationMicros()).append(" us");
+                for (QueryTrace.Event event : trace.getEvents()) {
+                    sb.append("\n  ").append(event.getSourceElapsedMicros()).append(" us ")
+                            .append(event.getSource()).append(" [").append(event.getThreadName()).append("] ")
+                            .append(event.getDescription());
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.cassandra.repository;
+
+/**
+ * Outcome of a reconciliation of the personByAge table against the persons table.
+ *
+ */
+public class ReconcileResult {
+
+    private final long personsChecked;
+
+    private final long missingRowsRestored;
+
+    private final long orphanRowsRemoved;
+
+    private final long elapsedNanos;
+
+    ReconcileResult(long personsChecked, long missingRowsRestored, long orphanRowsRemoved, long elapsedNanos) {
+        this.personsChecked = personsChecked;
+        this.missingRowsRestored = missingRowsRestored;
+        this.orphanRowsRemoved = orphanRowsRemoved;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getPersonsChecked() {
+        return personsChecked;
+    }
+
+    /**
+     * @return the number of persons that had no personByAge row and got one.
+     */
+    public long getMissingRowsRestored() {
+        return missingRowsRestored;
+    }
+
+    /**
+     * @return the number of personByAge rows deleted because their person does not exist or has another age.
+     */
+    public long getOrphanRowsRemoved() {
+        return orphanRowsRemoved;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public boolean isConsistent() {
+        return missingRowsRestored == 0 && orphanRowsRemoved == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ReconcileResult{" +
+                "personsChecked=" + personsChecked +
+                ", missingRowsRestored=" + missingRowsRestored +
+                ", orphanRowsRemoved=" + orphanRowsRemoved +
+                ", elapsedMillis=" + elapsedNanos / 1_000_000 +
+                '}';
+    }
+}
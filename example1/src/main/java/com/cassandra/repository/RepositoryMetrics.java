@@ -0,0 +1,103 @@
+package com.cassandra.repository;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Records the latency and the errors of the repository operations.
+ *
+ * Each operation gets a timer named {@code prefix.operation}, giving its rate and latency percentiles, and a meter per
+ * exception type named {@code prefix.operation.errors.ExceptionType}. The time asynchronous requests spend waiting
+ * for a free in-flight slot, and for a slot of the concurrency limiter if any, is recorded apart in
+ * {@code prefix.executor.permitWait}, so that client-side queueing can be told from the latency of the cluster.
+ *
+ */
+public class RepositoryMetrics {
+
+    private static final RepositoryMetrics DISABLED = new RepositoryMetrics(null, null);
+
+    private final MetricRegistry registry;
+
+    private final String prefix;
+
+    private final Timer permitWait;
+
+    /**
+     * @param registry the registry to add the metrics to.
+     * @param prefix the prefix of the metric names.
+     */
+    public RepositoryMetrics(MetricRegistry registry, String prefix) {
+        this.registry = registry;
+        this.prefix = prefix;
+        this.permitWait = registry == null ? null : registry.timer(MetricRegistry.name(prefix, "executor", "permitWait"));
+    }
+
+    /**
+     * @return metrics recording nothing.
+     */
+    public static RepositoryMetrics disabled() {
+        return DISABLED;
+    }
+
+    public void time(String operation, Runnable call) {
+        timeCall(operation, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    public <T> T timeCall(String operation, Supplier<T> call) {
+        if (registry == null) {
+            return call.get();
+        }
+        Timer.Context context = registry.timer(MetricRegistry.name(prefix, operation)).time();
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            markError(operation, e);
+            throw e;
+        } finally {
+            context.stop();
+        }
+    }
+
+    /**
+     * Times an asynchronous operation until its future completes.
+     */
+    public <T> CompletableFuture<T> timeAsync(String operation, Supplier<CompletableFuture<T>> call) {
+        if (registry == null) {
+            return call.get();
+        }
+        Timer.Context context = registry.timer(MetricRegistry.name(prefix, operation)).time();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            context.stop();
+            markError(operation, e);
+            throw e;
+        }
+        return future.whenComplete((result, error) -> {
+            context.stop();
+            if (error != null) {
+                markError(operation, error);
+            }
+        });
+    }
+
+    void recordPermitWait(long nanos) {
+        if (permitWait != null) {
+            permitWait.update(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void markError(String operation, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        registry.meter(MetricRegistry.name(prefix, operation, "errors", cause.getClass().getSimpleName())).mark();
+    }
+}
@@ -0,0 +1,60 @@
+package com.cassandra.repository;
+
+import java.util.List;
+
+import com.datastax.driver.core.TokenRange;
+
+/**
+ * Outcome of a token range scan: how many rows and ranges were scanned and which ranges could not be read.
+ *
+ */
+public class ScanResult {
+
+    private final long rowsScanned;
+
+    private final int rangesScanned;
+
+    private final List<TokenRange> failedRanges;
+
+    private final long elapsedNanos;
+
+    ScanResult(long rowsScanned, int rangesScanned, List<TokenRange> failedRanges, long elapsedNanos) {
+        this.rowsScanned = rowsScanned;
+        this.rangesScanned = rangesScanned;
+        this.failedRanges = failedRanges;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getRowsScanned() {
+        return rowsScanned;
+    }
+
+    public int getRangesScanned() {
+        return rangesScanned;
+    }
+
+    /**
+     * @return the parts of the ring that were still unread once the retries were exhausted.
+     */
+    public List<TokenRange> getFailedRanges() {
+        return failedRanges;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public boolean isComplete() {
+        return failedRanges.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ScanResult{" +
+                "rowsScanned=" + rowsScanned +
+                ", rangesScanned=" + rangesScanned +
+                ", failedRanges=" + failedRanges.size() +
+                ", elapsedMillis=" + elapsedNanos / 1_000_000 +
+                '}';
+    }
+}
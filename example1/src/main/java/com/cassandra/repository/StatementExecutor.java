@@ -0,0 +1,195 @@
+package com.cassandra.repository;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Executes the repository statements on a session.
+ *
+ * Asynchronous executions are bounded: once the maximum number of requests is in flight, the calling thread blocks
+ * until one of them completes. Callers must therefore not start new requests from a driver callback thread.
+ *
+ * With an {@link AdaptiveConcurrencyLimiter}, every request, synchronous or not, also takes a slot of the limiter
+ * until its first page is received, and reports its latency and error to it. A {@link QueryTracer} samples the
+ * statements to trace and reports the slow ones.
+ *
+ */
+public class StatementExecutor {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 256;
+
+    private final Session session;
+
+    private final int maxInFlightRequests;
+
+    private final Semaphore inFlightRequests;
+
+    private final RepositoryMetrics metrics;
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    private final QueryTracer tracer;
+
+    public StatementExecutor(Session session) {
+        this(session, DEFAULT_MAX_IN_FLIGHT_REQUESTS);
+    }
+
+    public StatementExecutor(Session session, int maxInFlightRequests) {
+        this(session, maxInFlightRequests, RepositoryMetrics.disabled());
+    }
+
+    /**
+     * @param session the session to run the statements on.
+     * @param maxInFlightRequests the maximum number of asynchronous requests running at the same time.
+     * @param metrics records the time spent waiting for a free in-flight slot.
+     */
+    public StatementExecutor(Session session, int maxInFlightRequests, RepositoryMetrics metrics) {
+        this(session, maxInFlightRequests, metrics, null);
+    }
+
+    /**
+     * @param session the session to run the statements on.
+     * @param maxInFlightRequests the maximum number of asynchronous requests running at the same time.
+     * @param metrics records the time spent waiting for a free in-flight slot.
+     * @param limiter adapts the number of requests in flight to the cluster, {@code null} for none.
+     */
+    public StatementExecutor(Session session, int maxInFlightRequests, RepositoryMetrics metrics, AdaptiveConcurrencyLimiter limiter) {
+        this(session, maxInFlightRequests, metrics, limiter, QueryTracer.disabled());
+    }
+
+    /**
+     * @param session the session to run the statements on.
+     * @param maxInFlightRequests the maximum number of asynchronous requests running at the same time.
+     * @param metrics records the time spent waiting for a free in-flight slot.
+     * @param limiter adapts the number of requests in flight to the cluster, {@code null} for none.
+     * @param tracer traces a sample of the statements and reports the slow ones.
+     */
+    public StatementExecutor(Session session, int maxInFlightRequests, RepositoryMetrics metrics, AdaptiveConcurrencyLimiter limiter, QueryTracer tracer) {
+        if (maxInFlightRequests < 1) {
+            throw new IllegalArgumentException("maxInFlightRequests must be at least 1, got " + maxInFlightRequests);
+        }
+        this.session = session;
+        this.maxInFlightRequests = maxInFlightRequests;
+        this.inFlightRequests = new Semaphore(maxInFlightRequests);
+        this.metrics = metrics;
+        this.limiter = limiter;
+        this.tracer = tracer;
+    }
+
+    /**
+     * Executes the statement and waits for its first page.
+     *
+     * @param statement the statement to execute.
+     * @return the result set of the statement.
+     * @throws java.util.concurrent.RejectedExecutionException if the limiter has no slot for the statement.
+     */
+    public ResultSet execute(Statement statement) {
+        if (limiter == null) {
+            return tracer.execute(session, statement);
+        }
+        long start = limiter.acquire();
+        try {
+            ResultSet rs = tracer.execute(session, statement);
+            limiter.release(start, null);
+            return rs;
+        } catch (RuntimeException e) {
+            limiter.release(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Executes the statement asynchronously, waiting first for a free in-flight slot.
+     *
+     * @param statement the statement to execute.
+     * @return a future completed with the first page of the result set.
+     * @throws java.util.concurrent.RejectedExecutionException if the limiter has no slot for the statement.
+     */
+    public CompletableFuture<ResultSet> executeAsync(Statement statement) {
+        long waitStart = System.nanoTime();
+        if (!inFlightRequests.tryAcquire()) {
+            inFlightRequests.acquireUninterruptibly();
+        }
+        long start;
+        try {
+            start = limiter == null ? System.nanoTime() : limiter.acquire();
+        } catch (RuntimeException e) {
+            inFlightRequests.release();
+            throw e;
+        }
+        metrics.recordPermitWait(start - waitStart);
+        try {
+            CompletableFuture<ResultSet> future = tracer.executeAsync(session, statement);
+            future.whenComplete((rs, error) -> release(start, error));
+            return future;
+        } catch (RuntimeException e) {
+            release(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Fetches the next page of a result set asynchronously.
+     *
+     * The next page belongs to a request that already holds a slot, so this call never blocks.
+     *
+     * @param rs a result set that is not fully fetched.
+     * @return a future completed with the result set once the next page is available.
+     */
+    public CompletableFuture<ResultSet> fetchMoreResults(ResultSet rs) {
+        return toCompletableFuture(rs.fetchMoreResults());
+    }
+
+    private void release(long start, Throwable error) {
+        inFlightRequests.release();
+        if (limiter != null) {
+            limiter.release(start, error);
+        }
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    public int getInFlightRequests() {
+        return maxInFlightRequests - inFlightRequests.availablePermits();
+    }
+
+    /**
+     * @return the limiter of the requests, {@code null} if there is none.
+     */
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    public QueryTracer getTracer() {
+        return tracer;
+    }
+
+    static <T> CompletableFuture<T> toCompletableFuture(ListenableFuture<T> listenableFuture) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Futures.addCallback(listenableFuture, new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                future.complete(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,262 @@
+package com.cassandra.repository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cassandra.domain.Person;
+
+/**
+ * Buffers person writes and sends them to the persons table in the background.
+ *
+ * Writes of the same id made before the buffer is flushed are coalesced: only the last one is sent. The buffer is
+ * flushed once it holds batchSize persons or every flush interval, whichever comes first, and each person is written
+ * with an asynchronous statement. The buffer holds at most capacity persons; past that, {@link #write(Person)} blocks
+ * and {@link #offer(Person)} rejects the person until a flush makes room.
+ *
+ * A write is only durable once flushed, so the writer must be closed (or registered on the
+ * {@link com.cassandra.CassandraConnector}) to send the last persons.
+ *
+ */
+public class WriteBehindPersonWriter implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindPersonWriter.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    private final PersonStorage repository;
+
+    private final int batchSize;
+
+    private final int capacity;
+
+    private final ScheduledExecutorService flusher;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notFull = lock.newCondition();
+
+    private Map<UUID, Person> pending = new LinkedHashMap<>();
+
+    private boolean flushRequested;
+
+    private boolean closed;
+
+    /**
+     * One future per flush sending persons, registered when the buffer is swapped, under the lock, and completed once
+     * all its writes are.
+     */
+    private final Set<CompletableFuture<Void>> inFlightFlushes = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong coalescedWrites = new AtomicLong();
+
+    private final AtomicLong writtenPersons = new AtomicLong();
+
+    private final AtomicLong failedWrites = new AtomicLong();
+
+    public WriteBehindPersonWriter(PersonStorage repository) {
+        this(repository, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param repository the storage writing the persons.
+     * @param batchSize the number of buffered persons triggering a flush.
+     * @param flushIntervalMillis the maximum time a person stays in the buffer.
+     * @param capacity the maximum number of buffered persons, at least batchSize.
+     */
+    public WriteBehindPersonWriter(PersonStorage repository, int batchSize, long flushIntervalMillis, int capacity) {
+        if (batchSize < 1 || flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("batchSize and flushIntervalMillis must be at least 1");
+        }
+        if (capacity < batchSize) {
+            throw new IllegalArgumentException("capacity must be at least batchSize");
+        }
+        this.repository = repository;
+        this.batchSize = batchSize;
+        this.capacity = capacity;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "person-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushPending, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Buffers the person, waiting for room if the buffer is full.
+     *
+     * @throws IllegalStateException if the writer is closed.
+     */
+    public void write(Person person) {
+        enqueue(person, true);
+    }
+
+    /**
+     * Buffers the person if there is room for it.
+     *
+     * @return {@code false} if the buffer is full.
+     * @throws IllegalStateException if the writer is closed.
+     */
+    public boolean offer(Person person) {
+        return enqueue(person, false);
+    }
+
+    /**
+     * Sends the buffered persons now.
+     *
+     * @return a future completed once the persons buffered so far, and those already being written, are written or
+     *         have failed.
+     */
+    public CompletableFuture<Void> flush() {
+        flushPending();
+        return CompletableFuture.allOf(inFlightFlushes.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Stops accepting persons, then writes the buffered ones and waits for all writes to complete.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush().join();
+        LOG.info("Write-behind closed: " + writtenPersons.get() + " persons written, " + failedWrites.get() + " failed, "
+                + coalescedWrites.get() + " writes coalesced");
+    }
+
+    public int getPendingWrites() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of writes replaced by a later write of the same id before being sent.
+     */
+    public long getCoalescedWrites() {
+        return coalescedWrites.get();
+    }
+
+    public long getWrittenPersons() {
+        return writtenPersons.get();
+    }
+
+    public long getFailedWrites() {
+        return failedWrites.get();
+    }
+
+    private boolean enqueue(Person person, boolean block) {
+        boolean requestFlush = false;
+        lock.lock();
+        try {
+            checkOpen();
+            while (!pending.containsKey(person.getId()) && pending.size() >= capacity) {
+                if (!block) {
+                    return false;
+                }
+                notFull.awaitUninterruptibly();
+                checkOpen();
+            }
+            if (pending.put(person.getId(), person) != null) {
+                coalescedWrites.incrementAndGet();
+            }
+            if (pending.size() >= batchSize && !flushRequested) {
+                flushRequested = true;
+                requestFlush = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (requestFlush) {
+            try {
+                flusher.execute(this::flushPending);
+            } catch (RejectedExecutionException e) {
+                // Closed meanwhile, close() flushes the buffer.
+            }
+        }
+        return true;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The writer is closed");
+        }
+    }
+
+    private void flushPending() {
+        Map<UUID, Person> persons;
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        lock.lock();
+        try {
+            persons = pending;
+            pending = new LinkedHashMap<>();
+            flushRequested = false;
+            notFull.signalAll();
+            if (persons.isEmpty()) {
+                return;
+            }
+            // Registered before the persons leave the buffer, so that a concurrent flush() waits for them.
+            inFlightFlushes.add(flushed);
+        } finally {
+            lock.unlock();
+        }
+        flushed.whenComplete((v, error) -> inFlightFlushes.remove(flushed));
+
+        List<CompletableFuture<Void>> writes = new ArrayList<>(persons.size());
+        try {
+            for (Person person : persons.values()) {
+                try {
+                    writes.add(repository.insertPersonAsync(person).handle((v, error) -> {
+                        if (error == null) {
+                            writtenPersons.incrementAndGet();
+                        } else {
+                            LOG.warn("Failed to write person " + person.getId(), error);
+                            failedWrites.incrementAndGet();
+                        }
+                        return null;
+                    }));
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to write person " + person.getId(), e);
+                    failedWrites.incrementAndGet();
+                }
+            }
+        } finally {
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).whenComplete((v, error) -> flushed.complete(null));
+        }
+    }
+}
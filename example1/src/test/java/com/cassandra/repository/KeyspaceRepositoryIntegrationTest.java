@@ -5,10 +5,13 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import com.cassandra.CassandraConnector;
+import com.cassandra.CassandraConnectorConfig;
 import com.cassandra.repository.KeyspaceRepository;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.thrift.transport.TTransportException;
@@ -20,6 +23,9 @@ import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.ProtocolOptions;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Session;
 
@@ -28,20 +34,66 @@ public class KeyspaceRepositoryIntegrationTest {
 
     private KeyspaceRepository schemaRepository;
 
-    private Session session;
+    private static CassandraConnector client;
+
+    private static Session session;
+
+    private static MetricRegistry metricRegistry = new MetricRegistry();
 
     @BeforeClass
     public static void init() throws ConfigurationException, TTransportException, IOException, InterruptedException {
         // Start an embedded Cassandra Server
         EmbeddedCassandraServerHelper.startEmbeddedCassandra(20000L);
+        client = new CassandraConnector();
+        client.connect(CassandraConnectorConfig.builder()
+                .withContactPoints("127.0.0.1")
+                .withPort(9142)
+                .withConnectionsPerHost(2, 4)
+                .withMaxRequestsPerConnection(1024)
+                .withCompression(ProtocolOptions.Compression.LZ4)
+                .withReadTimeoutMillis(20000)
+                .withMetricRegistry(metricRegistry)
+                .withSpeculativeExecution(99, 1)
+                .build());
+        session = client.getSession();
     }
 
     @Before
     public void connect() {
-        CassandraConnector client = new CassandraConnector();
-        client.connect("127.0.0.1", 9142);
-        this.session = client.getSession();
-        schemaRepository = new KeyspaceRepository(session);
+        schemaRepository = new KeyspaceRepository(session, metricRegistry);
+    }
+
+    @Test
+    public void whenConnectingWithWarmup_thenPoolsOpenedAndStatementsPrepared() {
+        String keyspaceName = "testWarmupKeyspace";
+        schemaRepository.createKeyspace(keyspaceName, "SimpleStrategy", 1);
+        schemaRepository.useKeyspace(keyspaceName);
+        PersonRepository personRepository = new PersonRepository(session);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+        personRepository.createTablePersonsByAge();
+
+        CassandraConnector warmClient = new CassandraConnector();
+        warmClient.connect(CassandraConnectorConfig.builder()
+                .withContactPoints("127.0.0.1")
+                .withPort(9142)
+                .withKeyspace(keyspaceName)
+                .withConnectionsPerHost(1, 3)
+                .withPoolWarmup(true)
+                .withWarmupQueries(PersonRepository.getQueries(1))
+                .build());
+        try {
+            Session warmSession = warmClient.getSession();
+            assertEquals(Arrays.asList("cluster", "pools", "statements"), new ArrayList<>(warmClient.getStartupTimings().keySet()));
+            for (Host host : warmSession.getState().getConnectedHosts()) {
+                assertEquals(3, warmSession.getState().getOpenConnections(host));
+            }
+            assertEquals(0, (int) PreparedStatementRegistry.of(warmSession).prepareAllAsync(PersonRepository.getQueries(1)).join());
+            assertTrue(new PersonRepository(warmSession).selectAll().isEmpty());
+        } finally {
+            warmClient.close();
+            schemaRepository.deleteKeyspace(keyspaceName);
+        }
     }
 
     @Test
@@ -59,6 +111,21 @@ public class KeyspaceRepositoryIntegrationTest {
         assertTrue(matchedKeyspaces.get(0).equals(keyspaceName.toLowerCase()));
     }
 
+    @Test
+    public void whenCreatingAKeyspace_thenLatencyAndDriverMetricsRecorded() {
+        String keyspaceName = "testMetricsKeyspace";
+        schemaRepository.createKeyspace(keyspaceName, "SimpleStrategy", 1);
+        schemaRepository.deleteKeyspace(keyspaceName);
+
+        assertTrue(metricRegistry.timer(MetricRegistry.name(KeyspaceRepository.class, "createKeyspace")).getCount() >= 1);
+        assertTrue(metricRegistry.getGauges().containsKey(CassandraConnector.DRIVER_METRICS + ".in-flight-requests"));
+        assertTrue(metricRegistry.getGauges().containsKey(CassandraConnector.DRIVER_METRICS + ".open-connections"));
+        assertTrue(metricRegistry.getTimers().containsKey(CassandraConnector.DRIVER_METRICS + ".requests"));
+        assertTrue(metricRegistry.getGauges().containsKey(CassandraConnector.DRIVER_METRICS + ".speculative-executions-won"));
+        // A single node has no other replica to speculate on.
+        assertEquals(0, client.getSpeculativeExecutionPolicy().getFiredExecutions());
+    }
+
     @Test
     public void whenDeletingAKeyspace_thenDoesNotExist() {
         String keyspaceName = "testCassandraKeyspace";
@@ -73,6 +140,7 @@ public class KeyspaceRepositoryIntegrationTest {
 
     @AfterClass
     public static void cleanup() {
+        client.close();
         EmbeddedCassandraServerHelper.cleanEmbeddedCassandra();
     }
 }
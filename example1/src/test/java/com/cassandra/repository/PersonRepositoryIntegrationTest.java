@@ -5,8 +5,26 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.cassandra.CassandraConnector;
 import com.cassandra.domain.Person;
@@ -17,7 +35,11 @@ import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.driver.core.PagingState;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.exceptions.InvalidQueryException;
@@ -30,7 +52,9 @@ public class PersonRepositoryIntegrationTest {
 
     private PersonRepository personRepository;
 
-    private Session session;
+    private static CassandraConnector client;
+
+    private static Session session;
 
     final String KEYSPACE_NAME = "testLibrary";
     final String PERSON = "person";
@@ -40,13 +64,13 @@ public class PersonRepositoryIntegrationTest {
     public static void init() throws ConfigurationException, TTransportException, IOException, InterruptedException {
         // Start an embedded Cassandra Server
         EmbeddedCassandraServerHelper.startEmbeddedCassandra(20000L);
+        client = new CassandraConnector();
+        client.connect("127.0.0.1", 9142);
+        session = client.getSession();
     }
 
     @Before
     public void connect() {
-        CassandraConnector client = new CassandraConnector();
-        client.connect("127.0.0.1", 9142);
-        this.session = client.getSession();
         schemaRepository = new KeyspaceRepository(session);
         schemaRepository.createKeyspace(KEYSPACE_NAME, "SimpleStrategy", 1);
         schemaRepository.useKeyspace(KEYSPACE_NAME);
@@ -92,10 +116,42 @@ public class PersonRepositoryIntegrationTest {
         Person person = new Person(UUIDs.timeBased(), firstName, lastName, 27, "kallelzied@gmail.com");
         personRepository.insertPersonByAge(person);
 
-        Person savedPerson = personRepository.selectByAge(27);
+        Person savedPerson = personRepository.selectByAge(27).get(0);
         assertEquals(person.getAge(), savedPerson.getAge());
     }
 
+    @Test
+    public void whenSelectingAnAgeRangeFromBuckets_thenAllPersonsInRangeReturned() {
+        personRepository.deleteTable(PERSON_BY_AGE);
+        PersonRepository bucketedRepository = new PersonRepository(session, PersonRepositoryConfig.builder().withAgeBuckets(4).build());
+        bucketedRepository.createTablePersonsByAge();
+
+        for (int i = 0; i < 40; i++) {
+            bucketedRepository.insertPersonByAge(new Person(UUIDs.timeBased(), "Zied" + i, "Kallel", 20 + i % 5, "dev@github.com"));
+        }
+
+        assertEquals(8, bucketedRepository.selectByAge(22).size());
+
+        List<Person> persons = bucketedRepository.selectByAgeRange(21, 23);
+        assertEquals(24, persons.size());
+        assertEquals(21, persons.get(0).getAge());
+        assertEquals(23, persons.get(23).getAge());
+        assertTrue(bucketedRepository.selectByAgeRange(Integer.MAX_VALUE - 1, Integer.MAX_VALUE).isEmpty());
+
+        boolean rejected = false;
+        try {
+            bucketedRepository.selectByAgeRange(0, Integer.MAX_VALUE);
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+
+        bucketedRepository.deletePersonByAge(22);
+        assertTrue(bucketedRepository.selectByAge(22).isEmpty());
+        assertEquals(32, bucketedRepository.selectAllPersonByAge().size());
+        personRepository.deleteTable(PERSON_BY_AGE);
+    }
+
     @Test
     public void whenAddingANewPersonBatch_ThenPersonAddedInAllTables() {
         // Create table persons
@@ -142,6 +198,738 @@ public class PersonRepositoryIntegrationTest {
         assertTrue(persons.stream().anyMatch(b -> b.getLastName().equals("Brown")));
     }
 
+    @Test
+    public void whenAddingPersonsAsync_thenAllPersonsExist() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+
+        PersonRepository asyncRepository = new PersonRepository(session, 4);
+        List<CompletableFuture<Void>> inserts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            inserts.add(asyncRepository.insertPersonAsync(new Person(UUIDs.timeBased(), "Zied" + i, "Kallel", 27, "dev@github.com")));
+        }
+        CompletableFuture.allOf(inserts.toArray(new CompletableFuture[0])).join();
+
+        List<Person> persons = asyncRepository.selectAllAsync().join();
+
+        assertEquals(20, persons.size());
+        assertTrue(persons.stream().anyMatch(b -> b.getFirstName().equals("Zied19")));
+    }
+
+    @Test
+    public void whenBulkLoadingPersons_thenPersonsAddedInAllTables() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+        personRepository.deleteTable(PERSON_BY_AGE);
+        personRepository.createTablePersonsByAge();
+
+        List<Person> persons = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            persons.add(new Person(UUIDs.timeBased(), "Zied" + i, "Kallel", 20 + i % 7, "dev@github.com"));
+        }
+
+        BulkLoadResult result = personRepository.insertPersons(persons, 5, 4);
+
+        assertEquals(400, result.getRowsWritten());
+        assertEquals(0, result.getRowsFailed());
+        assertEquals(200, personRepository.selectAll().size());
+        assertEquals(200, personRepository.selectAllPersonByAge().size());
+    }
+
+    @Test
+    public void whenPagingThroughPersons_thenEveryPersonReturnedOnce() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+        for (int i = 0; i < 25; i++) {
+            personRepository.insertPerson(new Person(UUIDs.timeBased(), "Zied" + i, "Kallel", 27, "dev@github.com"));
+        }
+
+        assertEquals(25, personRepository.streamAll(4).count());
+
+        Set<UUID> ids = new HashSet<>();
+        String pagingState = null;
+        int pages = 0;
+        do {
+            PersonPage page = personRepository.selectAllPage(10, pagingState == null ? null : PagingState.fromString(pagingState));
+            page.getPersons().forEach(p -> ids.add(p.getId()));
+            pagingState = page.hasNextPage() ? page.getNextPagingState().toString() : null;
+            pages++;
+        } while (pagingState != null);
+
+        assertEquals(25, ids.size());
+        assertTrue(pages >= 3);
+    }
+
+    @Test
+    public void whenScanningAllPersons_thenEveryRowMappedIntoOnePerson() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+        for (int i = 0; i < 15; i++) {
+            personRepository.insertPerson(new Person(UUIDs.timeBased(), "Zied" + i, "Kallel", 20 + i, "dev@github.com"));
+        }
+
+        Set<UUID> ids = new HashSet<>();
+        Set<Person> instances = new HashSet<>();
+        AtomicInteger ages = new AtomicInteger();
+        personRepository.scanAll(4, p -> {
+            ids.add(p.getId());
+            instances.add(p);
+            ages.addAndGet(p.getAge());
+        });
+
+        assertEquals(15, ids.size());
+        assertEquals(1, instances.size());
+        assertEquals(405, ages.get());
+    }
+
+    @Test
+    public void whenPublishingAllPersons_thenPersonsDeliveredOnDemand() throws Exception {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+        for (int i = 0; i < 15; i++) {
+            personRepository.insertPerson(new Person(UUIDs.timeBased(), "Zied" + i, "Kallel", 20 + i, "dev@github.com"));
+        }
+
+        List<Person> received = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        personRepository.publishAll(4).subscribe(new Subscriber<Person>() {
+            private Subscription subscription;
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(3);
+            }
+
+            @Override
+            public void onNext(Person person) {
+                received.add(person);
+                if (received.size() % 3 == 0) {
+                    subscription.request(3);
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                completed.completeExceptionally(error);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+        completed.get(10, TimeUnit.SECONDS);
+        assertEquals(15, received.stream().map(Person::getId).distinct().count());
+
+        List<Person> beforeCancel = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger terminated = new AtomicInteger();
+        personRepository.publishAll(4).subscribe(new Subscriber<Person>() {
+            private Subscription subscription;
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Person person) {
+                beforeCancel.add(person);
+                if (beforeCancel.size() == 5) {
+                    subscription.cancel();
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                terminated.incrementAndGet();
+            }
+
+            @Override
+            public void onComplete() {
+                terminated.incrementAndGet();
+            }
+        });
+        Thread.sleep(500);
+        assertEquals(5, beforeCancel.size());
+        assertEquals(0, terminated.get());
+    }
+
+    @Test
+    public void whenScanningTokenRanges_thenEveryPersonScannedOnce() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+        for (int i = 0; i < 50; i++) {
+            personRepository.insertPerson(new Person(UUIDs.timeBased(), "Zied" + i, "Kallel", 27, "dev@github.com"));
+        }
+
+        Set<UUID> ids = ConcurrentHashMap.newKeySet();
+        AtomicInteger lastCompleted = new AtomicInteger();
+        ScanResult result = new PersonTokenRangeScanner(personRepository, 8, 4)
+                .scan(p -> ids.add(p.getId()), (completed, total, rows) -> lastCompleted.accumulateAndGet(completed, Math::max));
+
+        assertTrue(result.isComplete());
+        assertEquals(50, result.getRowsScanned());
+        assertEquals(50, ids.size());
+        assertTrue(result.getRangesScanned() >= 8);
+        assertEquals(result.getRangesScanned(), lastCompleted.get());
+    }
+
+    @Test
+    public void whenSelectingACachedPerson_thenServedFromCache() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+
+        CachingPersonRepository cachingRepository = new CachingPersonRepository(personRepository);
+        MetricRegistry registry = new MetricRegistry();
+        cachingRepository.registerMetrics(registry, "cache");
+
+        Person person = new Person(UUIDs.timeBased(), "Zied", "Kallel", 27, "dev@github.com");
+        personRepository.insertPerson(person);
+
+        assertEquals("Zied", cachingRepository.selectById(person.getId()).getFirstName());
+        assertEquals("Zied", cachingRepository.selectById(person.getId()).getFirstName());
+        assertEquals(1L, registry.getGauges().get("cache.personsById.hits").getValue());
+        assertEquals(1L, registry.getGauges().get("cache.personsById.misses").getValue());
+
+        person.setFirstName("Mike");
+        cachingRepository.insertPerson(person);
+        assertEquals("Mike", cachingRepository.selectById(person.getId()).getFirstName());
+        assertEquals("Mike", personRepository.selectById(person.getId()).getFirstName());
+    }
+
+    @Test
+    public void whenMutatingPersonsAfterCaching_thenCacheUnchanged() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+        personRepository.deleteTable(PERSON_BY_AGE);
+        personRepository.createTablePersonsByAge();
+
+        CachingPersonRepository cachingRepository = new CachingPersonRepository(personRepository);
+        Person person = new Person(UUIDs.timeBased(), "Zied", "Kallel", 27, "dev@github.com");
+        cachingRepository.insertPersonBatch(person);
+        person.setFirstName("Mike");
+        assertEquals("Zied", cachingRepository.selectById(person.getId()).getFirstName());
+
+        cachingRepository.selectById(person.getId()).setFirstName("John");
+        assertEquals("Zied", cachingRepository.selectById(person.getId()).getFirstName());
+
+        List<Person> persons = cachingRepository.selectByAge(27);
+        persons.get(0).setId(UUIDs.timeBased());
+        persons.clear();
+        assertEquals(person.getId(), cachingRepository.selectByAge(27).get(0).getId());
+    }
+
+    @Test
+    public void whenRunningOperationsWithMetrics_thenLatencyAndErrorsRecorded() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+
+        MetricRegistry registry = new MetricRegistry();
+        PersonRepository measuredRepository = new PersonRepository(session, PersonRepositoryConfig.builder().withMetrics(registry).build());
+        measuredRepository.insertPerson(new Person(UUIDs.timeBased(), "Zied", "Kallel", 27, "dev@github.com"));
+        measuredRepository.insertPersonAsync(new Person(UUIDs.timeBased(), "Mike", "Brown", 55, "dev@github.com")).join();
+        assertEquals(2, measuredRepository.selectAll().size());
+
+        try {
+            measuredRepository.selectByAgeRange(30, 20);
+        } catch (IllegalArgumentException e) {
+            // Expected, the range is empty.
+        }
+
+        String prefix = MetricRegistry.name(PersonRepository.class);
+        assertEquals(1, registry.timer(MetricRegistry.name(prefix, "insertPerson")).getCount());
+        assertEquals(1, registry.timer(MetricRegistry.name(prefix, "insertPersonAsync")).getCount());
+        assertEquals(1, registry.timer(MetricRegistry.name(prefix, "selectAll")).getCount());
+        assertEquals(1, registry.meter(MetricRegistry.name(prefix, "selectByAgeRange", "errors", "IllegalArgumentException")).getCount());
+        assertEquals(1, registry.timer(MetricRegistry.name(prefix, "executor", "permitWait")).getCount());
+    }
+
+    @Test
+    public void whenWritingBehind_thenLastWritePerPersonStoredOnClose() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+
+        WriteBehindPersonWriter writer = new WriteBehindPersonWriter(personRepository, 100, 3_600_000, 100);
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ids.add(UUIDs.timeBased());
+        }
+        for (int update = 0; update < 10; update++) {
+            for (UUID id : ids) {
+                writer.write(new Person(id, "Zied", "Kallel" + update, 27, "dev@github.com"));
+            }
+        }
+        assertEquals(3, writer.getPendingWrites());
+        assertEquals(27, writer.getCoalescedWrites());
+
+        writer.close();
+
+        List<Person> persons = personRepository.selectAll();
+        assertEquals(3, persons.size());
+        assertTrue(persons.stream().allMatch(p -> p.getLastName().equals("Kallel9")));
+        assertEquals(3, writer.getWrittenPersons());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void whenWritingBehindAfterClose_thenRejected() {
+        WriteBehindPersonWriter writer = new WriteBehindPersonWriter(personRepository);
+        writer.close();
+        writer.offer(new Person(UUIDs.timeBased(), "Zied", "Kallel", 27, "dev@github.com"));
+    }
+
+    @Test
+    public void whenDualWritingPersons_thenPersonAddedInAllTables() throws IOException {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+        personRepository.deleteTable(PERSON_BY_AGE);
+        personRepository.createTablePersonsByAge();
+
+        Path retryLogPath = Files.createTempFile("person-retry", ".log");
+        long failedAt = (System.currentTimeMillis() - 60_000) * 1000;
+        Person replayed = new Person(UUIDs.timeBased(), "Mike", "Brown", 55, null);
+        new PersonRetryLog(retryLogPath).append(PersonRetryLog.Target.PERSON, replayed, failedAt);
+        new PersonRetryLog(retryLogPath).append(PersonRetryLog.Target.PERSON_BY_AGE, replayed, failedAt);
+        Person updated = new Person(UUIDs.timeBased(), "John", "Smith", 30, null);
+        new PersonRetryLog(retryLogPath).append(PersonRetryLog.Target.PERSON, updated, failedAt);
+        personRepository.insertPerson(new Person(updated.getId(), "John", "Doe", 30, null));
+
+        PersonRepository dualWriteRepository = new PersonRepository(session, PersonRepositoryConfig.builder().withDualWrites(retryLogPath).build());
+        assertEquals(0, dualWriteRepository.getRetryLogSize());
+        assertEquals("Brown", dualWriteRepository.selectById(replayed.getId()).getLastName());
+        // The replayed write is older than the update written meanwhile.
+        assertEquals("Doe", dualWriteRepository.selectById(updated.getId()).getLastName());
+        dualWriteRepository.deletePerson(updated.getId());
+
+        for (int i = 0; i < 5; i++) {
+            dualWriteRepository.insertPersonBatch(new Person(UUIDs.timeBased(), "Zied" + i, "Kallel", 27, "dev@github.com"));
+        }
+        dualWriteRepository.insertPersonBatchAsync(new Person(UUIDs.timeBased(), "Zied", "Kallel", 28, "dev@github.com")).join();
+
+        assertEquals(7, dualWriteRepository.selectAll().size());
+        assertEquals(7, dualWriteRepository.selectAllPersonByAge().size());
+        assertTrue(dualWriteRepository.reconcilePersonByAge().isConsistent());
+    }
+
+    @Test
+    public void whenRetryLogTailIsTorn_thenLaterRecordsReplayed() throws IOException {
+        Path retryLogPath = Files.createTempFile("person-retry", ".log");
+        Person first = new Person(UUIDs.timeBased(), "Zied", "Kallel", 27, "dev@github.com");
+        Person torn = new Person(UUIDs.timeBased(), "Mike", "Brown", 55, null);
+        Person last = new Person(UUIDs.timeBased(), "John", "Doe", 30, null);
+        PersonRetryLog retryLog = new PersonRetryLog(retryLogPath);
+        retryLog.append(PersonRetryLog.Target.PERSON, first, 1);
+        retryLog.append(PersonRetryLog.Target.PERSON_BY_AGE, torn, 2);
+
+        // A crash in the middle of the second record.
+        byte[] bytes = Files.readAllBytes(retryLogPath);
+        Files.write(retryLogPath, Arrays.copyOf(bytes, bytes.length - 5));
+
+        PersonRetryLog reopened = new PersonRetryLog(retryLogPath);
+        reopened.append(PersonRetryLog.Target.PERSON_BY_AGE, last, 3);
+        assertEquals(2, reopened.size());
+
+        List<String> replayed = new ArrayList<>();
+        assertEquals(1, reopened.replay((target, person, timestamp) -> {
+            if (person.getId().equals(last.getId())) {
+                throw new IllegalStateException("Cluster unavailable");
+            }
+            replayed.add(target + " " + person.getId() + " " + timestamp);
+        }));
+        assertEquals(Arrays.asList("PERSON " + first.getId() + " 1"), replayed);
+
+        replayed.clear();
+        assertEquals(1, new PersonRetryLog(retryLogPath).replay((target, person, timestamp) -> replayed.add(target + " " + person.getLastName() + " " + timestamp)));
+        assertEquals(Arrays.asList("PERSON_BY_AGE Doe 3"), replayed);
+        assertFalse(Files.exists(retryLogPath));
+    }
+
+    @Test
+    public void whenReconcilingDivergedTables_thenPersonByAgeRepaired() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+        personRepository.deleteTable(PERSON_BY_AGE);
+        personRepository.createTablePersonsByAge();
+
+        personRepository.insertPersonBatch(new Person(UUIDs.timeBased(), "Zied", "Kallel", 27, "dev@github.com"));
+        Person withoutIndexRow = new Person(UUIDs.timeBased(), "Mike", "Brown", 55, "dev@github.com");
+        personRepository.insertPerson(withoutIndexRow);
+        Person orphan = new Person(UUIDs.timeBased(), null, null, 40, null);
+        personRepository.insertPersonByAge(orphan);
+        // A person without an age gets no personByAge row.
+        session.execute("INSERT INTO " + PERSON + " (id, firstname) VALUES (" + UUIDs.timeBased() + ", 'Sami');");
+
+        ReconcileResult result = personRepository.reconcilePersonByAge();
+
+        assertEquals(3, result.getPersonsChecked());
+        assertEquals(1, result.getMissingRowsRestored());
+        assertEquals(1, result.getOrphanRowsRemoved());
+        List<Person> personsByAge = personRepository.selectAllPersonByAge();
+        assertEquals(2, personsByAge.size());
+        assertTrue(personsByAge.stream().anyMatch(p -> p.getId().equals(withoutIndexRow.getId())));
+        assertTrue(personRepository.reconcilePersonByAge().isConsistent());
+
+        // The person of the deleted row is written late, with the timestamp of its original write: replayed from a
+        // retry log. Its row is restored over the tombstone of the first pass.
+        long originalWrite = (System.currentTimeMillis() - 60_000) * 1000;
+        session.execute("INSERT INTO " + PERSON + " (id, age) VALUES (" + orphan.getId() + ", 40) USING TIMESTAMP " + originalWrite + ";");
+        assertEquals(1, personRepository.reconcilePersonByAge().getMissingRowsRestored());
+        assertTrue(personRepository.reconcilePersonByAge().isConsistent());
+    }
+
+    @Test
+    public void whenSelectingConcurrentlyOnBlockingCallExecutor_thenAllPersonsFound() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+
+        List<Person> persons = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Person person = new Person(UUIDs.timeBased(), "First" + i, "Last" + i, i % 90, "dev@github.com");
+            personRepository.insertPerson(person);
+            persons.add(person);
+        }
+
+        List<CompletableFuture<Person>> selects = new ArrayList<>();
+        try (BlockingCallExecutor calls = new BlockingCallExecutor(32)) {
+            for (Person person : persons) {
+                selects.add(calls.submit(() -> personRepository.selectById(person.getId())));
+            }
+            for (int i = 0; i < persons.size(); i++) {
+                assertEquals(persons.get(i).getFirstName(), selects.get(i).join().getFirstName());
+            }
+            assertEquals(0, calls.getRunningCalls());
+        }
+    }
+
+    @Test
+    public void whenBulkLoadingSSTables_thenPersonAddedInAllTables() throws Exception {
+        PersonRepository indexedRepository = new PersonRepository(session, PersonRepositoryConfig.builder().withEmailIndex(true).build());
+        for (String table : Arrays.asList(PERSON, PERSON_BY_AGE, PersonRepository.TABLE_NAME_BY_EMAIL)) {
+            indexedRepository.deleteTable(table);
+        }
+        indexedRepository.createTable();
+        indexedRepository.alterTablepersons("age", "int");
+        indexedRepository.createTablePersonsByAge();
+        indexedRepository.createTablePersonsByEmail();
+
+        Path directory = Files.createTempDirectory("sstables");
+        Path csvFile = directory.resolve("persons.csv");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            lines.add(UUIDs.timeBased() + ",Zied" + i + ",Kallel,dev@github.com," + (20 + i % 10));
+        }
+        Files.write(csvFile, lines);
+
+        // The SSTable tools switch the JVM to client mode, so they cannot run next to the embedded server.
+        Process load = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), PersonSSTableLoader.class.getName(),
+                csvFile.toString(), directory.resolve("out").toString(), KEYSPACE_NAME, "127.0.0.1", "9142", "7010", "1", "2", "true")
+                .inheritIO()
+                .start();
+        assertTrue(load.waitFor(2, TimeUnit.MINUTES));
+        assertEquals(0, load.exitValue());
+
+        assertEquals(100, personRepository.selectAll().size());
+        assertEquals(100, personRepository.selectAllPersonByAge().size());
+        assertEquals(10, personRepository.selectByAge(25).size());
+        assertEquals(100, indexedRepository.selectByEmail("dev@github.com").size());
+    }
+
+    @Test
+    public void whenUsingOffHeapStorage_thenSameResultsAsCassandra() {
+        for (int ageBuckets : new int[] { 1, 3 }) {
+            PersonRepository cassandra = new PersonRepository(session, PersonRepositoryConfig.builder().withAgeBuckets(ageBuckets).build());
+            OffHeapPersonStorage offHeap = new OffHeapPersonStorage(ageBuckets);
+            for (PersonStorage storage : Arrays.asList(cassandra, offHeap)) {
+                storage.deleteTable(PERSON);
+                storage.createTable();
+                storage.deleteTable(PERSON_BY_AGE);
+                storage.createTablePersonsByAge();
+            }
+            cassandra.alterTablepersons("age", "int");
+
+            for (int i = 0; i < 60; i++) {
+                UUID id = i % 2 == 0 ? UUIDs.timeBased() : UUID.randomUUID();
+                Person person = new Person(id, "Zied" + i, i % 5 == 0 ? null : "Kallel", 20 + i % 6, "dev@github.com");
+                cassandra.insertPersonBatch(person);
+                offHeap.insertPersonBatch(person);
+            }
+
+            assertEquals(toString(cassandra.selectAll()), toString(offHeap.selectAll()));
+            assertEquals(toString(cassandra.selectAllPersonByAge()), toString(offHeap.selectAllPersonByAge()));
+            assertEquals(toString(cassandra.selectByAge(22)), toString(offHeap.selectByAge(22)));
+            assertEquals(toString(cassandra.selectByAgeRange(21, 23)), toString(offHeap.selectByAgeRange(21, 23)));
+            assertTrue(offHeap.selectByAgeRange(Integer.MAX_VALUE - 1, Integer.MAX_VALUE).isEmpty());
+            UUID id = cassandra.selectAll().get(7).getId();
+            assertEquals(toString(Arrays.asList(cassandra.selectById(id))), toString(Arrays.asList(offHeap.selectById(id))));
+
+            cassandra.deletePersonByAge(22);
+            offHeap.deletePersonByAge(22);
+            assertEquals(toString(cassandra.selectAllPersonByAge()), toString(offHeap.selectAllPersonByAge()));
+            assertTrue(offHeap.getOffHeapBytes() > 0);
+        }
+    }
+
+    @Test
+    public void whenReplacingOffHeapPersons_thenDeadRowsCompacted() {
+        OffHeapPersonStorage offHeap = new OffHeapPersonStorage(1, 4096);
+        offHeap.createTable();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ids.add(UUIDs.timeBased());
+        }
+
+        for (int round = 0; round < 100; round++) {
+            for (UUID id : ids) {
+                offHeap.insertPerson(new Person(id, "Zied" + round, "Kallel", 20 + round % 5, "dev@github.com"));
+            }
+        }
+
+        assertEquals(50, offHeap.selectAll().size());
+        assertEquals("Zied99", offHeap.selectById(ids.get(7)).getFirstName());
+        assertTrue(offHeap.getDeadOffHeapBytes() <= offHeap.getLiveOffHeapBytes() + 4096);
+        assertTrue(offHeap.getOffHeapBytes() <= 4 * 4096);
+    }
+
+    @Test(expected = InvalidQueryException.class)
+    public void whenDeletingAnOffHeapTable_thenUnconfiguredTable() {
+        OffHeapPersonStorage offHeap = new OffHeapPersonStorage();
+        offHeap.createTable();
+        offHeap.deleteTable(PERSON);
+        offHeap.selectAll();
+    }
+
+    @Test
+    public void whenSelectingAllAsBatch_thenColumnsMatchPersons() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+        for (int i = 0; i < 2500; i++) {
+            personRepository.insertPerson(new Person(UUIDs.timeBased(), "Zied" + i % 10, i % 7 == 0 ? null : "Kallel", 20 + i % 5, "dev@github.com"));
+        }
+
+        for (boolean offHeap : new boolean[] { false, true }) {
+            PersonBatch batch = personRepository.selectAllBatch(500, offHeap);
+
+            assertEquals(2500, batch.size());
+            assertEquals(toString(personRepository.selectAll()), toString(batch.toPersons()));
+            assertEquals(10, batch.getFirstNames().getDictionary().size());
+            assertEquals(1, batch.getEmails().getDictionary().size());
+
+            BitSet kallels = batch.getLastNames().whereEquals("Kallel");
+            assertEquals(2500 - 358, kallels.cardinality());
+            kallels.and(batch.whereAgeBetween(21, 22));
+            assertEquals(kallels.cardinality(), batch.ages(kallels).filter(age -> age == 21 || age == 22).count());
+            assertEquals(Integer.valueOf(358), batch.getLastNames().countByValue(batch.allRows()).get(null));
+            assertEquals(0, batch.getFirstNames().whereEquals("Unknown").cardinality());
+        }
+    }
+
+    @Test
+    public void whenWritingWithEmailIndex_thenPersonsFoundByEmail() {
+        PersonRepository indexedRepository = new PersonRepository(session, PersonRepositoryConfig.builder().withEmailIndex(true).build());
+        for (String table : Arrays.asList(PERSON, PERSON_BY_AGE, PersonRepository.TABLE_NAME_BY_EMAIL)) {
+            indexedRepository.deleteTable(table);
+        }
+        indexedRepository.createTable();
+        indexedRepository.alterTablepersons("age", "int");
+        indexedRepository.createTablePersonsByAge();
+        indexedRepository.createTablePersonsByEmail();
+
+        Person zied = new Person(UUIDs.timeBased(), "Zied", "Kallel", 27, "kallelzied@gmail.com");
+        indexedRepository.insertPersonBatch(zied);
+        indexedRepository.insertPersonAsync(new Person(UUIDs.timeBased(), "Mike", "Brown", 55, "dev@github.com")).join();
+        indexedRepository.insertPersons(Arrays.asList(
+                new Person(UUIDs.timeBased(), "Ali", "Ben", 30, "dev@github.com"),
+                new Person(UUIDs.timeBased(), "Sami", "Ben", 31, null)));
+
+        assertEquals(toString(Arrays.asList(zied)), toString(indexedRepository.selectByEmail("kallelzied@gmail.com")));
+        assertEquals(2, indexedRepository.selectByEmailAsync("dev@github.com").join().size());
+
+        zied.setEmail("zied@github.com");
+        indexedRepository.insertPerson(zied);
+        assertTrue(indexedRepository.selectByEmail("kallelzied@gmail.com").isEmpty());
+        assertEquals(toString(Arrays.asList(zied)), toString(indexedRepository.selectByEmail("zied@github.com")));
+
+        assertTrue(indexedRepository.deletePerson(zied.getId()));
+        assertFalse(indexedRepository.deletePerson(zied.getId()));
+        assertTrue(indexedRepository.selectByEmail("zied@github.com").isEmpty());
+        assertEquals(null, indexedRepository.selectById(zied.getId()));
+        assertTrue(indexedRepository.selectByAge(27).isEmpty());
+        assertEquals(3, indexedRepository.selectAll().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void whenSelectingByEmailWithoutIndex_thenIllegalState() {
+        personRepository.selectByEmail("dev@github.com");
+    }
+
+    @Test
+    public void whenLimitingConcurrency_thenLimitAdaptsToLatency() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder().withLimits(8, 2, 64).withLatencyThreshold(1, TimeUnit.HOURS).build();
+        PersonRepository limitedRepository = new PersonRepository(session, PersonRepositoryConfig.builder().withConcurrencyLimiter(limiter).build());
+        List<CompletableFuture<Void>> inserts = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            inserts.add(limitedRepository.insertPersonAsync(new Person(UUIDs.timeBased(), "Zied" + i, "Kallel", 27, "dev@github.com")));
+        }
+        CompletableFuture.allOf(inserts.toArray(new CompletableFuture[0])).join();
+        assertEquals(500, limitedRepository.selectAll().size());
+        assertTrue(limiter.getLimit() > 8);
+        assertEquals(0, limiter.getInFlight());
+
+        // Every request is slower than the threshold, so the limit backs off to its minimum.
+        AdaptiveConcurrencyLimiter slowLimiter = AdaptiveConcurrencyLimiter.builder().withLimits(8, 2, 64).withLatencyThreshold(1, TimeUnit.NANOSECONDS).build();
+        PersonRepository slowRepository = new PersonRepository(session, PersonRepositoryConfig.builder().withConcurrencyLimiter(slowLimiter).build());
+        UUID id = limitedRepository.selectAll().get(0).getId();
+        for (int i = 0; i < 50; i++) {
+            slowRepository.selectById(id);
+        }
+        assertEquals(2, slowLimiter.getLimit());
+        assertTrue(slowLimiter.getDecreases() > 0);
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void whenConcurrencyLimitReachedAndQueueFull_thenRejected() {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.builder().withLimits(1, 1, 1).withQueue(0, 0, TimeUnit.MILLISECONDS).build();
+        PersonRepository limitedRepository = new PersonRepository(session, PersonRepositoryConfig.builder().withConcurrencyLimiter(limiter).build());
+        long start = limiter.acquire();
+        try {
+            limitedRepository.selectAll();
+        } finally {
+            limiter.release(start, null);
+        }
+    }
+
+    @Test
+    public void whenTracingSlowQueries_thenReportedWithTheirTrace() throws InterruptedException {
+        // With a zero threshold every statement is slow.
+        ConcurrentLinkedQueue<QueryTracer.SlowQuery> slowQueries = new ConcurrentLinkedQueue<>();
+        QueryTracer tracer = new QueryTracer(1, 0, TimeUnit.MILLISECONDS, slowQueries::add);
+        PersonRepository tracedRepository = new PersonRepository(session, PersonRepositoryConfig.builder().withQueryTracer(tracer).build());
+        tracedRepository.deleteTable(PERSON);
+        tracedRepository.createTable();
+        tracedRepository.alterTablepersons("age", "int");
+        Person person = new Person(UUIDs.timeBased(), "Zied", "Kallel", 27, "dev@github.com");
+        tracedRepository.insertPerson(person);
+
+        assertEquals(person.getId(), tracedRepository.selectByIdAsync(person.getId()).join().getId());
+        // The traces are fetched in the background, those of the previous statements may still come.
+        QueryTracer.SlowQuery slowQuery = null;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (slowQuery == null && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+            slowQuery = slowQueries.stream().filter(q -> q.getQuery().contains("WHERE id = ?")).findFirst().orElse(null);
+        }
+        assertTrue(slowQuery.getTrace() != null);
+        assertTrue(slowQuery.getTrace().getCoordinator() != null);
+        assertFalse(slowQuery.getTrace().getEvents().isEmpty());
+        assertTrue(slowQuery.toString().contains(slowQuery.getTrace().getTraceId().toString()));
+        assertTrue(tracer.getTracedQueries() >= 5);
+
+        // Without sampling, slow statements are reported without a trace.
+        List<QueryTracer.SlowQuery> untraced = Collections.synchronizedList(new ArrayList<>());
+        new KeyspaceRepository(session, null, new QueryTracer(0, 0, TimeUnit.MILLISECONDS, untraced::add)).useKeyspace(KEYSPACE_NAME);
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (untraced.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, untraced.size());
+        assertEquals("USE " + KEYSPACE_NAME, untraced.get(0).getQuery());
+        assertEquals(null, untraced.get(0).getTrace());
+    }
+
+    @Test
+    public void whenSelectingByIds_thenPersonsInRequestOrderAndMissingIdsReported() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+        List<Person> inserted = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Person person = new Person(UUIDs.timeBased(), "Zied" + i, "Kallel", 20 + i % 10, "dev@github.com");
+            personRepository.insertPerson(person);
+            inserted.add(person);
+        }
+        Collections.shuffle(inserted);
+        List<Person> expected = inserted.subList(0, 50);
+        List<UUID> ids = expected.stream().map(Person::getId).collect(Collectors.toList());
+        List<UUID> missing = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            missing.add(UUIDs.timeBased());
+        }
+        ids.addAll(20, missing);
+        ids.add(ids.get(0));
+
+        MultiGetResult result = personRepository.selectByIds(ids, 8, 30, TimeUnit.SECONDS);
+
+        assertTrue(result.isComplete());
+        assertEquals(toString(expected), toString(result.getPersons()));
+        assertEquals(missing, result.getMissingIds());
+
+        MultiGetResult partial = personRepository.selectByIds(ids, 1, 0, TimeUnit.MILLISECONDS);
+        assertFalse(partial.isComplete());
+        assertEquals(60, partial.getPersons().size() + partial.getMissingIds().size() + partial.getUnresolvedIds().size());
+    }
+
+    @Test
+    public void whenSelectingAProjection_thenOnlyItsFieldsAreFilled() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+        Person zied = new Person(UUIDs.timeBased(), "Zied", "Kallel", 27, "kallelzied@gmail.com");
+        personRepository.insertPerson(zied);
+        personRepository.insertPerson(new Person(UUIDs.timeBased(), "Mike", "Brown", 55, "dev@github.com"));
+
+        List<Person> persons = personRepository.selectAll(EnumSet.of(PersonField.ID, PersonField.EMAIL));
+        assertEquals(2, persons.size());
+        assertTrue(persons.stream().allMatch(p -> p.getId() != null && p.getEmail() != null && p.getFirstName() == null && p.getLastName() == null && p.getAge() == 0));
+
+        Person age = personRepository.selectById(zied.getId(), EnumSet.of(PersonField.AGE));
+        assertEquals(Arrays.asList("null null null 27 null"), toString(Arrays.asList(age)));
+
+        try (Stream<Person> emails = personRepository.streamAll(1, EnumSet.of(PersonField.EMAIL, PersonField.ID))) {
+            assertEquals(new HashSet<>(Arrays.asList("kallelzied@gmail.com", "dev@github.com")), emails.map(Person::getEmail).collect(Collectors.toSet()));
+        }
+    }
+
+    private static List<String> toString(List<Person> persons) {
+        return persons.stream()
+                .map(p -> p.getId() + " " + p.getFirstName() + " " + p.getLastName() + " " + p.getAge() + " " + p.getEmail())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void whenAddingAPersonWithQuotes_thenStoredAsIs() {
+        personRepository.deleteTable(PERSON);
+        personRepository.createTable();
+        personRepository.alterTablepersons("age", "int");
+
+        Person person = new Person(UUIDs.timeBased(), "Zied", "O'Kallel", 27, "dev@github.com");
+        personRepository.insertPerson(person);
+
+        List<Person> persons = personRepository.selectAll();
+
+        assertEquals(1, persons.size());
+        assertEquals("O'Kallel", persons.get(0).getLastName());
+    }
+
     @Test
     public void whenDeletingAPersonByTitle_thenPersonIsDeleted() {
         personRepository.deleteTable(PERSON_BY_AGE);
@@ -172,6 +960,7 @@ public class PersonRepositoryIntegrationTest {
 
     @AfterClass
     public static void cleanup() {
+        client.close();
         EmbeddedCassandraServerHelper.cleanEmbeddedCassandra();
     }
 }